@@ -0,0 +1,483 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * A class for arbitrary precision complex numbers.
+ * The real and imaginary components are both represented by BigDecimals,
+ * and every operation rounds its result to the MathContext of this number,
+ * so a zoom only pays for the digits it needs (see contextFor).
+ * The transcendental functions (exp, ln, pow with a complex exponent) are
+ * computed to the full precision of the context.
+ * @author Blake
+ */
+public class BigComplexDecimal extends CNumber<BigDecimal, BigComplexDecimal> {
+
+	/**
+	 * Extra digits carried while computing transcendental functions,
+	 * so the rounded result is correct to the last digit or so.
+	 */
+	private static final int GUARD_DIGITS = 10;
+	private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+	private static BigDecimal pi = BigDecimal.ZERO;
+	private static BigDecimal ln10 = BigDecimal.ZERO;
+
+	private final MathContext context;
+
+	/**
+	 * Constructor for this complex decimal.
+	 * @param real - The real component of this complex decimal.
+	 * @param imag - The imaginary component of this complex decimal.
+	 * @param context - The precision of this number and of the results
+	 * of its operations.
+	 */
+	public BigComplexDecimal(BigDecimal real, BigDecimal imag, MathContext context) {
+		super(round(real, context), round(imag, context));
+		this.context = context;
+	}
+
+	public BigComplexDecimal(double real, double imag, MathContext context) {
+		this(new BigDecimal(real), new BigDecimal(imag), context);
+	}
+
+	public BigComplexDecimal(CDouble z, MathContext context) {
+		this(z.getReal(), z.getImag(), context);
+	}
+
+	/**
+	 * Rounds a component to the context. Zeros become BigDecimal.ZERO,
+	 * since rounding keeps the scale of a zero, and the scale of a product
+	 * is the sum of the scales: an imaginary part which stays exactly 0,
+	 * as on the real axis, would otherwise gain dozens of digits of scale
+	 * with every squaring.
+	 */
+	private static BigDecimal round(BigDecimal value, MathContext context) {
+		return value.signum() == 0 ? BigDecimal.ZERO : value.round(context);
+	}
+
+	/**
+	 * Returns the precision needed to tell apart pixels of the given size
+	 * around the given point, plus 16 guard digits for the rounding errors
+	 * which build up along an orbit.
+	 * @param x - The x coordinate of the point.
+	 * @param y - The y coordinate of the point.
+	 * @param pixelSize - The distance between neighboring pixels.
+	 * @return A MathContext with enough digits.
+	 */
+	public static MathContext contextFor(BigDecimal x, BigDecimal y, double pixelSize) {
+		double magnitude = Math.max(1, Math.max(Math.abs(x.doubleValue()), Math.abs(y.doubleValue())));
+		int digits = (int) Math.ceil(Math.log10(magnitude / pixelSize));
+		return new MathContext(Math.max(digits, 0) + 16);
+	}
+
+	/**
+	 * Adds this complex decimal with another, returns the result.
+	 * z1 + z2 = a1 + a2 + b1 * i + b2 * i
+	 * @param other - The other complex number to add.
+	 * @return A new complex decimal with the values added.
+	 */
+	public BigComplexDecimal add(BigComplexDecimal other) {
+		return new BigComplexDecimal(
+				getReal().add(other.getReal(), context),
+				getImag().add(other.getImag(), context),
+				context);
+	}
+
+	/**
+	 * Subtracts a complex decimal from this one, returns the result.
+	 * z1 - z2 = a1 - a2 + b1 * i - b2 * i
+	 * @param other - The other complex number being subtracted.
+	 * @return A new complex decimal with the value subtracted.
+	 */
+	public BigComplexDecimal sub(BigComplexDecimal other) {
+		return new BigComplexDecimal(
+				getReal().subtract(other.getReal(), context),
+				getImag().subtract(other.getImag(), context),
+				context);
+	}
+
+	/**
+	 * Multiplies this complex decimal with another, returns the result.
+	 * z1 * z2 = a1 * a2 - b1 * b2 + a1 * b2 * i + a2 * b1 * i
+	 * @param other - The other complex decimal to multiply with.
+	 * @return A new complex decimal with the values multiplied.
+	 */
+	public BigComplexDecimal mul(BigComplexDecimal other) {
+		BigDecimal a = getReal();
+		BigDecimal b = getImag();
+		BigDecimal c = other.getReal();
+		BigDecimal d = other.getImag();
+		return new BigComplexDecimal(
+				a.multiply(c, context).subtract(b.multiply(d, context), context),
+				a.multiply(d, context).add(b.multiply(c, context), context),
+				context);
+	}
+
+	/**
+	 * Trivial case of mul for real multiplicator.
+	 */
+	public BigComplexDecimal mul(double other) {
+		return mul(new BigDecimal(other));
+	}
+
+	public BigComplexDecimal mul(BigDecimal other) {
+		return new BigComplexDecimal(
+				getReal().multiply(other, context),
+				getImag().multiply(other, context),
+				context);
+	}
+
+	/**
+	 * Squares this complex decimal with 2 real multiplications instead of 4.
+	 * z ^ 2 = a ^ 2 - b ^ 2 + 2 * a * b * i
+	 * @return A new complex decimal with the value squared.
+	 */
+	public BigComplexDecimal square() {
+		BigDecimal a = getReal();
+		BigDecimal b = getImag();
+		return new BigComplexDecimal(
+				a.add(b, context).multiply(a.subtract(b, context), context),
+				a.multiply(b, context).multiply(TWO, context),
+				context);
+	}
+
+	/**
+	 * Divides this complex decimal by another, returns the result.
+	 * z1 / z2 = z1 * conj(z2) / (z2 * conj(z2))
+	 * @param other - The other complex decimal being divided by.
+	 * @return A new complex decimal with the value divided.
+	 */
+	public BigComplexDecimal div(BigComplexDecimal other) {
+		return mul(other.conj()).div(other.norm());
+	}
+
+	/**
+	 * Trivial case of div for real divisor.
+	 */
+	public BigComplexDecimal div(double other) {
+		return div(new BigDecimal(other));
+	}
+
+	public BigComplexDecimal div(BigDecimal other) {
+		return new BigComplexDecimal(
+				getReal().divide(other, context),
+				getImag().divide(other, context),
+				context);
+	}
+
+	/**
+	 * Exponentiates this complex decimal by another, returns the result.
+	 * z1 ^ z2 = e ^ (z2 * ln(z1))
+	 * 0 ^ z2 is 0, except 0 ^ 0 which is 1.
+	 * @param other - The other complex decimal being exponentiated by.
+	 * @return A new complex decimal, with the values exponentiated.
+	 */
+	public BigComplexDecimal pow(BigComplexDecimal other) {
+		if(isZero()) {
+			return other.isZero() ? one() : this;
+		}
+		return other.mul(ln()).exp();
+	}
+
+	/**
+	 * Trivial case of pow for integral exponent, by repeated squaring.
+	 */
+	public BigComplexDecimal pow(int other) {
+		BigComplexDecimal m = other >= 0 ? this : one().div(this);
+		BigComplexDecimal ans = one();
+		for(int n=Math.abs(other);n>0;n>>=1) {
+			if((n & 1) == 1) {
+				ans = ans.mul(m);
+			}
+			if(n > 1) {
+				m = m.square();
+			}
+		}
+		return ans;
+	}
+
+	/**
+	 * Trivial case of pow for base e.
+	 * e^z = e^a * cos(b) + e^a * sin(b) * i
+	 */
+	public BigComplexDecimal exp() {
+		MathContext work = new MathContext(context.getPrecision() + GUARD_DIGITS);
+		BigDecimal hypot = exp(getReal(), work);
+		BigDecimal[] sinCos = sinCos(getImag(), work);
+		return new BigComplexDecimal(
+				hypot.multiply(sinCos[1], context),
+				hypot.multiply(sinCos[0], context),
+				context);
+	}
+
+	/**
+	 * Returns the principal natural logarithm of this complex decimal.
+	 * ln(z) = ln(|z|) + arg(z) * i
+	 */
+	public BigComplexDecimal ln() {
+		MathContext work = new MathContext(context.getPrecision() + GUARD_DIGITS);
+		return new BigComplexDecimal(
+				ln(norm(), work).divide(TWO, context),
+				atan2(getImag(), getReal(), work),
+				context);
+	}
+
+	/**
+	 * Returns the absolute value/norm/magnitude/hypotenuse of this complex
+	 * decimal, rounded to a double.
+	 * |z| = sqrt(a^2 + b^2)
+	 * @return The absolute value of this complex decimal.
+	 */
+	public double abs() {
+		return Math.hypot(getReal().doubleValue(), getImag().doubleValue());
+	}
+
+	/**
+	 * Returns the absolute value of this complex decimal in full precision.
+	 * @return The absolute value of this complex decimal.
+	 */
+	public BigDecimal absPrecise() {
+		return norm().sqrt(context);
+	}
+
+	/**
+	 * Returns the squared absolute value of this complex decimal.
+	 * |z|^2 = a^2 + b^2
+	 * @return The squared absolute value of this complex decimal.
+	 */
+	public BigDecimal norm() {
+		return getReal().multiply(getReal(), context).add(getImag().multiply(getImag(), context), context);
+	}
+
+	/**
+	 * Returns the conjugate of this complex decimal.
+	 * conj(z) = a - b * i
+	 * @return The conjugate of this complex decimal.
+	 */
+	public BigComplexDecimal conj() {
+		return new BigComplexDecimal(getReal(), getImag().negate(), context);
+	}
+
+	/**
+	 * Returns the arg/angle/direction/theta/phase of this complex decimal,
+	 * rounded to a double. Both components are scaled by the same power of
+	 * 10 first, so tiny or huge numbers do not underflow or overflow.
+	 * arg(z) = arctan(b / a)
+	 * @return The arg of this complex decimal.
+	 */
+	public double arg() {
+		if(isZero()) {
+			return 0;
+		}
+		int shift = -Math.max(exponent(getReal()), exponent(getImag()));
+		return Math.atan2(
+				getImag().scaleByPowerOfTen(shift).doubleValue(),
+				getReal().scaleByPowerOfTen(shift).doubleValue());
+	}
+
+	/**
+	 * Returns the arg of this complex decimal in full precision.
+	 * @return The arg of this complex decimal.
+	 */
+	public BigDecimal argPrecise() {
+		return atan2(getImag(), getReal(), new MathContext(context.getPrecision() + GUARD_DIGITS)).round(context);
+	}
+
+	public boolean isZero() {
+		return getReal().signum() == 0 && getImag().signum() == 0;
+	}
+
+	public boolean equals(BigComplexDecimal other) {
+		return getReal().compareTo(other.getReal()) == 0 && getImag().compareTo(other.getImag()) == 0;
+	}
+
+	public BigComplexDecimal copy() {
+		return new BigComplexDecimal(getReal(), getImag(), context);
+	}
+
+	/**
+	 * Returns a copy of this complex decimal rounded to another precision.
+	 * Its operations produce results in the new precision.
+	 * @param context - The new precision.
+	 * @return A new complex decimal.
+	 */
+	public BigComplexDecimal withContext(MathContext context) {
+		return new BigComplexDecimal(getReal(), getImag(), context);
+	}
+
+	public MathContext getContext() {
+		return context;
+	}
+
+	/**
+	 * Rounds this complex decimal to a complex double.
+	 */
+	public CDouble toCDouble() {
+		return new CDouble(getReal().doubleValue(), getImag().doubleValue());
+	}
+
+	private BigComplexDecimal one() {
+		return new BigComplexDecimal(BigDecimal.ONE, BigDecimal.ZERO, context);
+	}
+
+	/**
+	 * Returns the power of 10 of the leading digit of x.
+	 */
+	private static int exponent(BigDecimal x) {
+		return x.signum() == 0 ? Integer.MIN_VALUE / 2 : x.precision() - x.scale() - 1;
+	}
+
+	/**
+	 * e ^ x. x is halved until it is small, the Taylor series is summed,
+	 * and the result is squared back up.
+	 */
+	static BigDecimal exp(BigDecimal x, MathContext context) {
+		if(x.signum() == 0) {
+			return BigDecimal.ONE;
+		}
+		int halvings = Math.max(0, exponent(x) * 4 + 12);
+		MathContext work = new MathContext(context.getPrecision() + GUARD_DIGITS + halvings / 3);
+		BigDecimal r = x.divide(TWO.pow(halvings), work);
+		BigDecimal sum = BigDecimal.ONE;
+		BigDecimal term = BigDecimal.ONE;
+		BigDecimal epsilon = BigDecimal.ONE.movePointLeft(work.getPrecision());
+		for(int n=1;term.abs().compareTo(epsilon) > 0;n++) {
+			term = term.multiply(r).divide(BigDecimal.valueOf(n), work);
+			sum = sum.add(term, work);
+		}
+		for(int i=0;i<halvings;i++) {
+			sum = sum.multiply(sum, work);
+		}
+		return sum.round(context);
+	}
+
+	/**
+	 * ln(x) for positive x. x = m * 10 ^ e with m in [1, 10), so
+	 * ln(x) = ln(m) + e * ln(10), and ln(m) is refined from the double
+	 * logarithm by Newton's method on e ^ y = m.
+	 */
+	static BigDecimal ln(BigDecimal x, MathContext context) {
+		if(x.signum() <= 0) {
+			throw new ArithmeticException("ln of a non positive number: " + x);
+		}
+		int e = exponent(x);
+		BigDecimal m = x.scaleByPowerOfTen(-e);
+		BigDecimal ln = lnNewton(m, context);
+		if(e != 0) {
+			ln = ln.add(ln10(context).multiply(BigDecimal.valueOf(e)), context);
+		}
+		return ln;
+	}
+
+	private static BigDecimal lnNewton(BigDecimal m, MathContext context) {
+		MathContext work = new MathContext(context.getPrecision() + GUARD_DIGITS);
+		BigDecimal y = new BigDecimal(Math.log(m.doubleValue()));
+		//each step roughly doubles the correct digits, starting from a double's 15
+		for(int digits=15;digits<work.getPrecision()*2;digits*=2) {
+			BigDecimal ey = exp(y, work);
+			y = y.add(TWO.multiply(m.subtract(ey)).divide(m.add(ey), work), work);
+		}
+		return y.round(context);
+	}
+
+	private static synchronized BigDecimal ln10(MathContext context) {
+		if(ln10.precision() < context.getPrecision() + GUARD_DIGITS) {
+			ln10 = lnNewton(BigDecimal.TEN, new MathContext(context.getPrecision() + 2 * GUARD_DIGITS));
+		}
+		return ln10.round(context);
+	}
+
+	/**
+	 * Returns pi by Machin's formula: pi = 16 * atan(1/5) - 4 * atan(1/239).
+	 */
+	static synchronized BigDecimal pi(MathContext context) {
+		if(pi.precision() < context.getPrecision() + GUARD_DIGITS) {
+			MathContext work = new MathContext(context.getPrecision() + 2 * GUARD_DIGITS);
+			pi = atanInverse(5, work).multiply(BigDecimal.valueOf(16))
+					.subtract(atanInverse(239, work).multiply(BigDecimal.valueOf(4)), work);
+		}
+		return pi.round(context);
+	}
+
+	/**
+	 * atan(1 / n) = 1/n - 1/(3 n^3) + 1/(5 n^5) - ...
+	 */
+	private static BigDecimal atanInverse(int n, MathContext context) {
+		BigDecimal n2 = BigDecimal.valueOf((long) n * n);
+		BigDecimal power = BigDecimal.ONE.divide(BigDecimal.valueOf(n), context);
+		BigDecimal sum = power;
+		BigDecimal epsilon = BigDecimal.ONE.movePointLeft(context.getPrecision() + 1);
+		for(int k=1;power.compareTo(epsilon) > 0;k++) {
+			power = power.divide(n2, context);
+			BigDecimal term = power.divide(BigDecimal.valueOf(2 * k + 1), context);
+			sum = k % 2 == 0 ? sum.add(term, context) : sum.subtract(term, context);
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns { sin(x), cos(x) }. x is reduced to [-pi, pi] and halved a
+	 * few times, both Taylor series are summed, and the angle is doubled back.
+	 */
+	static BigDecimal[] sinCos(BigDecimal x, MathContext context) {
+		int halvings = 8;
+		int magnitude = Math.max(0, exponent(x) + 1);
+		MathContext work = new MathContext(context.getPrecision() + GUARD_DIGITS + magnitude);
+		if(magnitude > 0) {
+			BigDecimal twoPi = pi(work).multiply(TWO);
+			BigInteger turns = x.divide(twoPi, 0, RoundingMode.HALF_EVEN).toBigInteger();
+			x = x.subtract(twoPi.multiply(new BigDecimal(turns)), work);
+		}
+		BigDecimal r = x.divide(TWO.pow(halvings), work);
+		BigDecimal r2 = r.multiply(r, work);
+		BigDecimal sin = r;
+		BigDecimal cos = BigDecimal.ONE;
+		BigDecimal term = r;
+		BigDecimal epsilon = BigDecimal.ONE.movePointLeft(work.getPrecision());
+		//term runs through r ^ n / n!, alternately feeding sin and cos
+		for(int n=2;term.abs().compareTo(epsilon) > 0;n++) {
+			term = term.multiply(r).divide(BigDecimal.valueOf(n), work);
+			boolean negative = n % 4 == 2 || n % 4 == 3;
+			BigDecimal signed = negative ? term.negate() : term;
+			if(n % 2 == 0) {
+				cos = cos.add(signed, work);
+			} else {
+				sin = sin.add(signed, work);
+			}
+		}
+		for(int i=0;i<halvings;i++) {
+			BigDecimal s = TWO.multiply(sin).multiply(cos, work);
+			cos = BigDecimal.ONE.subtract(TWO.multiply(sin).multiply(sin, work), work);
+			sin = s;
+		}
+		return new BigDecimal[] { sin.round(context), cos.round(context) };
+	}
+
+	/**
+	 * The angle of (x, y), refined from the double angle by Newton's method
+	 * on f(t) = x * sin(t) - y * cos(t).
+	 */
+	static BigDecimal atan2(BigDecimal y, BigDecimal x, MathContext context) {
+		if(x.signum() == 0 && y.signum() == 0) {
+			return BigDecimal.ZERO;
+		}
+		int shift = -Math.max(exponent(x), exponent(y));
+		x = x.scaleByPowerOfTen(shift);
+		y = y.scaleByPowerOfTen(shift);
+		MathContext work = new MathContext(context.getPrecision() + GUARD_DIGITS);
+		BigDecimal t = new BigDecimal(Math.atan2(y.doubleValue(), x.doubleValue()));
+		for(int digits=15;digits<work.getPrecision()*2;digits*=2) {
+			BigDecimal[] sinCos = sinCos(t, work);
+			BigDecimal f = x.multiply(sinCos[0]).subtract(y.multiply(sinCos[1]), work);
+			BigDecimal df = x.multiply(sinCos[1]).add(y.multiply(sinCos[0]), work);
+			t = t.subtract(f.divide(df, work), work);
+		}
+		return t.round(context);
+	}
+
+	public String toString() {
+		return String.format("BigComplex(%s, %si)", getReal(), getImag());
+	}
+}
@@ -118,7 +118,7 @@ class CDouble extends CNumber<Double, CDouble> {
 	public CDouble sub(CDouble other) {
 		return new CDouble(
 				getReal() - other.getReal(),
-				getImag() + other.getImag());
+				getImag() - other.getImag());
 	}
 	
 	public CDouble sub(double other) {
@@ -169,29 +169,51 @@ class CDouble extends CNumber<Double, CDouble> {
 	}
 	
 	/**
-	 * TODO fix pow?
 	 * Exponentiates this complex double by another complex double, returns the result.
-	 * z1 ^ z2 = (z1 * conj(z1)) ^ (z2 / 2) * e ^ (i * z2 * arg(z1))
+	 * z1 ^ z2 = e ^ (z2 * ln|z1|) * e ^ (i * z2 * arg(z1)), with ln|z1| and
+	 * arg(z1) taken once. Integral exponents go through pow(int) instead,
+	 * and 0 ^ z2 is 1 for z2 = 0 and 0 otherwise, rather than NaN.
 	 * @param other - The other complex double being exponentiated by.
 	 * @return A new complex double, with the values exponentiated.
 	 */
 	public CDouble pow(CDouble other) {
-		return other.mul(Math.log(getReal() * getReal() + getImag() * getImag()) / 2).exp()
-					.mul((new CDouble(0, 1).mul(other).mul(arg())).exp());
+		double a = other.getReal();
+		double b = other.getImag();
+		if(b == 0 && a == (int) a) {
+			return pow((int) a);
+		}
+		double norm = norm();
+		if(norm == 0) {
+			return new CDouble(0, 0);
+		}
+		double logAbs = Math.log(norm) / 2;
+		double arg = arg();
+		double hypot = Math.exp(a * logAbs - b * arg);
+		double angle = b * logAbs + a * arg;
+		return new CDouble(
+				hypot * Math.cos(angle),
+				hypot * Math.sin(angle));
 	}
 	
 	/**
-	 * Trivial case of pow for integral exponent.
+	 * Trivial case of pow for integral exponent, by repeated squaring:
+	 * about 2 * log2(other) multiplications instead of other.
+	 * Negative exponents invert z first, 1 / z = conj(z) / |z|^2.
 	 */
 	public CDouble pow(int other) {
-		//m is the value which is repeatedly multiplied by
-		CDouble m = other >= 0 ? this : conj().div(this.mul(conj()));
-		CDouble ans = new CDouble(1, 0);
-		other = Math.abs(other);
-		for(int i=0;i<other;i++) {
-			ans = ans.mul(m);
+		double norm = norm();
+		//m is the value which is repeatedly squared
+		CDouble m = other >= 0 ? this : new CDouble(getReal() / norm, -getImag() / norm);
+		CDouble ans = null;
+		for(int n=Math.abs(other);n>0;n>>=1) {
+			if((n & 1) == 1) {
+				ans = ans == null ? m : ans.mul(m);
+			}
+			if(n > 1) {
+				m = m.mul(m);
+			}
 		}
-		return ans;
+		return ans == null ? new CDouble(1, 0) : ans;
 	}
 	
 	/**
@@ -223,6 +245,17 @@ class CDouble extends CNumber<Double, CDouble> {
 		return Math.hypot(getReal(), getImag());
 	}
 	
+	/**
+	 * Returns the squared absolute value of this complex double.
+	 * Cheaper than abs since no square root is taken, so bailouts
+	 * should compare it against a squared radius.
+	 * |z|^2 = a^2 + b^2
+	 * @return The squared absolute value of this complex double.
+	 */
+	public double norm() {
+		return getReal() * getReal() + getImag() * getImag();
+	}
+	
 	/**
 	 * Returns the conjugate of this complex double.
 	 * conj(z) = a - b * i
@@ -256,28 +289,168 @@ class CDouble extends CNumber<Double, CDouble> {
 
 class CPolynomial {
 	
+	/**
+	 * The most sweeps roots makes over all of the estimates.
+	 */
+	private static final int ROOT_ITERATIONS = 500;
+	
 	private CDouble[] coefficients;
+	private double[] real;
+	private double[] imag;
 	
 	public CPolynomial(double... coefficients) {
-		this.coefficients = new CDouble[coefficients.length];
-		for(int i=0;i<coefficients.length;i++) {
-			this.coefficients[i] = new CDouble(coefficients[i], 0);
-		}
+		this(toCDoubles(coefficients));
 	}
 	
 	public CPolynomial(CDouble... coefficients) {
 		this.coefficients = coefficients;
+		real = new double[coefficients.length];
+		imag = new double[coefficients.length];
+		for(int i=0;i<coefficients.length;i++) {
+			real[i] = coefficients[i].getReal();
+			imag[i] = coefficients[i].getImag();
+		}
 	}
 	
-	public CDouble sum(CDouble z) {
-		CDouble ans = new CDouble(0, 0);
+	private static CDouble[] toCDoubles(double... coefficients) {
+		CDouble[] c = new CDouble[coefficients.length];
 		for(int i=0;i<coefficients.length;i++) {
-			if(coefficients[i].isZero()) {
-				continue;
+			c[i] = new CDouble(coefficients[i], 0);
+		}
+		return c;
+	}
+	
+	public CDouble sum(CDouble z) {
+		double[] p = new double[2];
+		sum(z.getReal(), z.getImag(), p, 0);
+		return new CDouble(p[0], p[1]);
+	}
+	
+	/**
+	 * Allocation free version of sum for use in kernels, in Horner form:
+	 * p(z) = c0 + z * (c1 + z * (c2 + ...)), one complex multiplication
+	 * and addition per coefficient.
+	 * Writes the real and imaginary parts of p(z) to out[offset] and out[offset + 1].
+	 * @param zr - The real part of z.
+	 * @param zi - The imaginary part of z.
+	 * @param out - The array to write the result to.
+	 * @param offset - The index of the real part in out.
+	 */
+	public void sum(double zr, double zi, double[] out, int offset) {
+		int n = real.length - 1;
+		double pr = n < 0 ? 0 : real[n];
+		double pi = n < 0 ? 0 : imag[n];
+		for(int i=n-1;i>=0;i--) {
+			double t = pr * zr - pi * zi + real[i];
+			pi = pr * zi + pi * zr + imag[i];
+			pr = t;
+		}
+		out[offset] = pr;
+		out[offset + 1] = pi;
+	}
+	
+	/**
+	 * Evaluates p(z) and p'(z) in a single Horner pass, without allocating.
+	 * The derivative is accumulated alongside the value: d = d * z + p
+	 * before each step p = p * z + c.
+	 * Writes p(z) to out[offset] and out[offset + 1], and p'(z) to
+	 * out[offset + 2] and out[offset + 3].
+	 * @param zr - The real part of z.
+	 * @param zi - The imaginary part of z.
+	 * @param out - The array to write the results to.
+	 * @param offset - The index of the real part of p(z) in out.
+	 */
+	public void sumWithDerivative(double zr, double zi, double[] out, int offset) {
+		int n = real.length - 1;
+		double pr = n < 0 ? 0 : real[n];
+		double pi = n < 0 ? 0 : imag[n];
+		double dr = 0;
+		double di = 0;
+		for(int i=n-1;i>=0;i--) {
+			double t = dr * zr - di * zi + pr;
+			di = dr * zi + di * zr + pi;
+			dr = t;
+			t = pr * zr - pi * zi + real[i];
+			pi = pr * zi + pi * zr + imag[i];
+			pr = t;
+		}
+		out[offset] = pr;
+		out[offset + 1] = pi;
+		out[offset + 2] = dr;
+		out[offset + 3] = di;
+	}
+	
+	/**
+	 * Finds every root of this polynomial at once by the Durand-Kerner
+	 * method: each estimate r[k] moves by p(r[k]) / (c * prod(r[k] - r[j])),
+	 * j != k, where c is the leading coefficient, until none of them moves
+	 * by more than about an ulp. Each root is then polished with a few
+	 * Newton steps, which matters for repeated roots, where Durand-Kerner
+	 * only converges linearly.
+	 * @return The roots, as many as the degree without leading zero coefficients.
+	 */
+	public CDouble[] roots() {
+		int n = real.length - 1;
+		while(n > 0 && real[n] == 0 && imag[n] == 0) {
+			n--;
+		}
+		double[] rr = new double[n];
+		double[] ri = new double[n];
+		//powers of 0.4 + 0.9i, neither real nor a root of unity, as the usual starting points
+		double sr = 1;
+		double si = 0;
+		for(int k=0;k<n;k++) {
+			rr[k] = sr;
+			ri[k] = si;
+			double t = sr * 0.4 - si * 0.9;
+			si = sr * 0.9 + si * 0.4;
+			sr = t;
+		}
+		double[] p = new double[2];
+		for(int iteration=0;iteration<ROOT_ITERATIONS;iteration++) {
+			double moved = 0;
+			for(int k=0;k<n;k++) {
+				//the denominator, c * prod(r[k] - r[j])
+				double dr = real[n];
+				double di = imag[n];
+				for(int j=0;j<n;j++) {
+					if(j != k) {
+						double ar = rr[k] - rr[j];
+						double ai = ri[k] - ri[j];
+						double t = dr * ar - di * ai;
+						di = dr * ai + di * ar;
+						dr = t;
+					}
+				}
+				sum(rr[k], ri[k], p, 0);
+				double norm = dr * dr + di * di;
+				double qr = (p[0] * dr + p[1] * di) / norm;
+				double qi = (p[1] * dr - p[0] * di) / norm;
+				if(Double.isFinite(qr) && Double.isFinite(qi)) {
+					rr[k] -= qr;
+					ri[k] -= qi;
+					moved = Math.max(moved, Math.abs(qr) + Math.abs(qi));
+				}
+			}
+			if(moved < 1e-15) {
+				break;
+			}
+		}
+		CDouble[] roots = new CDouble[n];
+		double[] pd = new double[4];
+		for(int k=0;k<n;k++) {
+			for(int step=0;step<4;step++) {
+				sumWithDerivative(rr[k], ri[k], pd, 0);
+				double norm = pd[2] * pd[2] + pd[3] * pd[3];
+				if(norm == 0) {
+					break;
+				}
+				rr[k] -= (pd[0] * pd[2] + pd[1] * pd[3]) / norm;
+				ri[k] -= (pd[1] * pd[2] - pd[0] * pd[3]) / norm;
 			}
-			ans = ans.add(z.pow(i).mul(coefficients[i]));
+			roots[k] = new CDouble(rr[k], ri[k]);
 		}
-		return ans;
+		return roots;
 	}
 	
 	public CPolynomial derive() {
@@ -291,4 +464,44 @@ class CPolynomial {
 	public int degree() {
 		return coefficients.length - 1;
 	}
+	
+	/**
+	 * Parses a coefficient as written by toString: a real number, or a
+	 * complex one like 1.5-2.0i, 1.0E-4+0.5i or 2.0i.
+	 * @param s - The coefficient.
+	 * @return The coefficient as a CDouble.
+	 * @throws NumberFormatException If s is not a number.
+	 */
+	static CDouble parseCoefficient(String s) {
+		s = s.trim();
+		if(!s.endsWith("i")) {
+			return new CDouble(Double.parseDouble(s), 0);
+		}
+		String body = s.substring(0, s.length() - 1);
+		//the sign between the parts, which is neither a leading sign nor the sign of an exponent
+		int split = Math.max(body.length() - 1, 0);
+		while(split > 0 && !((body.charAt(split) == '+' || body.charAt(split) == '-')
+				&& Character.toLowerCase(body.charAt(split - 1)) != 'e')) {
+			split--;
+		}
+		String imag = body.substring(split);
+		double im = imag.isEmpty() || imag.equals("+") ? 1 : imag.equals("-") ? -1 : Double.parseDouble(imag);
+		return new CDouble(split == 0 ? 0 : Double.parseDouble(body.substring(0, split)), im);
+	}
+	
+	/**
+	 * Represents the coefficients, constant term first, separated by commas.
+	 * Real coefficients are written as plain numbers, and others like
+	 * 1.5-2.0i, which parseCoefficient reads back.
+	 */
+	public String toString() {
+		String s = "";
+		for(int i=0;i<real.length;i++) {
+			s += (i == 0 ? "" : ",") + real[i];
+			if(imag[i] != 0) {
+				s += (imag[i] < 0 ? "" : "+") + imag[i] + "i";
+			}
+		}
+		return s;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,342 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * A number with about 106 bits (32 digits) of precision, represented as
+ * the unevaluated sum of two doubles: hi holds the value rounded to a double
+ * and lo holds the rounding error, |lo| <= ulp(hi) / 2.
+ * The error free sums and products (Dekker, Knuth) only take a few double
+ * operations each, so double-doubles are many times cheaper than BigDecimal
+ * for the depths between doubles and perturbation.
+ * @author Blake
+ */
+@SuppressWarnings("serial")
+public class DoubleDouble extends Number implements Comparable<DoubleDouble> {
+
+	public static final DoubleDouble ZERO = new DoubleDouble(0);
+	public static final DoubleDouble ONE = new DoubleDouble(1);
+	/**
+	 * The precision of a double-double in decimal digits.
+	 */
+	public static final MathContext CONTEXT = new MathContext(32);
+
+	public final double hi;
+	public final double lo;
+
+	/**
+	 * Constructor for this double-double.
+	 * @param hi - The high part. Must be hi + lo rounded to a double.
+	 * @param lo - The low part.
+	 */
+	public DoubleDouble(double hi, double lo) {
+		this.hi = hi;
+		this.lo = lo;
+	}
+
+	public DoubleDouble(double value) {
+		this(value, 0);
+	}
+
+	/**
+	 * Rounds a BigDecimal to the nearest double-double.
+	 * @param value - The value to round.
+	 * @return A new double-double.
+	 */
+	public static DoubleDouble valueOf(BigDecimal value) {
+		double hi = value.doubleValue();
+		double lo = value.subtract(new BigDecimal(hi)).doubleValue();
+		return new DoubleDouble(hi, lo);
+	}
+
+	/**
+	 * Returns a + b with the rounding error, renormalized.
+	 */
+	private static DoubleDouble twoSum(double a, double b) {
+		double s = a + b;
+		double v = s - a;
+		return new DoubleDouble(s, (a - (s - v)) + (b - v));
+	}
+
+	/**
+	 * Like twoSum, but only valid when |a| >= |b|.
+	 */
+	private static DoubleDouble quickTwoSum(double a, double b) {
+		double s = a + b;
+		return new DoubleDouble(s, b - (s - a));
+	}
+
+	public DoubleDouble add(DoubleDouble other) {
+		double s = hi + other.hi;
+		double v = s - hi;
+		double e = (hi - (s - v)) + (other.hi - v);
+		double t = lo + other.lo;
+		double w = t - lo;
+		double f = (lo - (t - w)) + (other.lo - w);
+		e += t;
+		double u = s + e;
+		e = e - (u - s);
+		e += f;
+		return quickTwoSum(u, e);
+	}
+
+	public DoubleDouble add(double other) {
+		DoubleDouble s = twoSum(hi, other);
+		return quickTwoSum(s.hi, s.lo + lo);
+	}
+
+	public DoubleDouble sub(DoubleDouble other) {
+		return add(other.negate());
+	}
+
+	/**
+	 * Multiplies with the error of the high parts' product from Math.fma.
+	 * (a + b) * (c + d) = a * c + a * d + b * c, dropping b * d.
+	 */
+	public DoubleDouble mul(DoubleDouble other) {
+		double p = hi * other.hi;
+		double e = Math.fma(hi, other.hi, -p) + (hi * other.lo + lo * other.hi);
+		return quickTwoSum(p, e);
+	}
+
+	public DoubleDouble mul(double other) {
+		double p = hi * other;
+		double e = Math.fma(hi, other, -p) + lo * other;
+		return quickTwoSum(p, e);
+	}
+
+	/**
+	 * Long division: three quotient digits, each a double.
+	 */
+	public DoubleDouble div(DoubleDouble other) {
+		double q1 = hi / other.hi;
+		DoubleDouble r = sub(other.mul(q1));
+		double q2 = r.hi / other.hi;
+		r = r.sub(other.mul(q2));
+		double q3 = r.hi / other.hi;
+		return quickTwoSum(q1, q2).add(q3);
+	}
+
+	public DoubleDouble div(double other) {
+		return div(new DoubleDouble(other));
+	}
+
+	/**
+	 * The double square root refined by one Newton step.
+	 */
+	public DoubleDouble sqrt() {
+		if(hi <= 0) {
+			if(hi < 0) {
+				throw new ArithmeticException("sqrt of a negative number: " + this);
+			}
+			return ZERO;
+		}
+		double x = Math.sqrt(hi);
+		DoubleDouble r = sub(new DoubleDouble(x).mul(x));
+		return quickTwoSum(x, r.hi * 0.5 / x);
+	}
+
+	public DoubleDouble negate() {
+		return new DoubleDouble(-hi, -lo);
+	}
+
+	public DoubleDouble abs() {
+		return hi < 0 || hi == 0 && lo < 0 ? negate() : this;
+	}
+
+	public int signum() {
+		return hi != 0 ? (int) Math.signum(hi) : (int) Math.signum(lo);
+	}
+
+	public BigDecimal toBigDecimal() {
+		return new BigDecimal(hi).add(new BigDecimal(lo));
+	}
+
+	@Override
+	public int compareTo(DoubleDouble other) {
+		int c = Double.compare(hi, other.hi);
+		return c != 0 ? c : Double.compare(lo, other.lo);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof DoubleDouble && compareTo((DoubleDouble) other) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return Double.hashCode(hi) * 31 + Double.hashCode(lo);
+	}
+
+	@Override
+	public double doubleValue() {
+		return hi;
+	}
+
+	@Override
+	public float floatValue() {
+		return (float) hi;
+	}
+
+	@Override
+	public int intValue() {
+		return (int) longValue();
+	}
+
+	@Override
+	public long longValue() {
+		return toBigDecimal().longValue();
+	}
+
+	public String toString() {
+		return toBigDecimal().round(CONTEXT).toString();
+	}
+}
+
+/**
+ * A class for complex double-doubles.
+ * The real and imaginary components are both represented by DoubleDoubles.
+ * The transcendental functions go through BigComplexDecimal at 32 digits,
+ * since they are not on any rendering path.
+ * @author Blake
+ */
+class CDoubleDouble extends CNumber<DoubleDouble, CDoubleDouble> {
+
+	/**
+	 * Constructor for this complex double-double.
+	 * @param real - The real component of this complex double-double.
+	 * @param imag - The imaginary component of this complex double-double.
+	 */
+	public CDoubleDouble(DoubleDouble real, DoubleDouble imag) {
+		super(real, imag);
+	}
+
+	public CDoubleDouble(double real, double imag) {
+		this(new DoubleDouble(real), new DoubleDouble(imag));
+	}
+
+	public CDoubleDouble(BigComplexDecimal z) {
+		this(DoubleDouble.valueOf(z.getReal()), DoubleDouble.valueOf(z.getImag()));
+	}
+
+	public CDoubleDouble add(CDoubleDouble other) {
+		return new CDoubleDouble(
+				getReal().add(other.getReal()),
+				getImag().add(other.getImag()));
+	}
+
+	public CDoubleDouble sub(CDoubleDouble other) {
+		return new CDoubleDouble(
+				getReal().sub(other.getReal()),
+				getImag().sub(other.getImag()));
+	}
+
+	/**
+	 * z1 * z2 = a1 * a2 - b1 * b2 + a1 * b2 * i + a2 * b1 * i
+	 */
+	public CDoubleDouble mul(CDoubleDouble other) {
+		return new CDoubleDouble(
+				getReal().mul(other.getReal()).sub(getImag().mul(other.getImag())),
+				getReal().mul(other.getImag()).add(getImag().mul(other.getReal())));
+	}
+
+	/**
+	 * Trivial case of mul for real multiplicator.
+	 */
+	public CDoubleDouble mul(double other) {
+		return new CDoubleDouble(
+				getReal().mul(other),
+				getImag().mul(other));
+	}
+
+	/**
+	 * z ^ 2 = a ^ 2 - b ^ 2 + 2 * a * b * i
+	 */
+	public CDoubleDouble square() {
+		return new CDoubleDouble(
+				getReal().add(getImag()).mul(getReal().sub(getImag())),
+				getReal().mul(getImag()).mul(2));
+	}
+
+	/**
+	 * z1 / z2 = z1 * conj(z2) / (z2 * conj(z2))
+	 */
+	public CDoubleDouble div(CDoubleDouble other) {
+		DoubleDouble norm = other.norm();
+		CDoubleDouble z = mul(other.conj());
+		return new CDoubleDouble(
+				z.getReal().div(norm),
+				z.getImag().div(norm));
+	}
+
+	/**
+	 * Trivial case of div for real divisor.
+	 */
+	public CDoubleDouble div(double other) {
+		return new CDoubleDouble(
+				getReal().div(other),
+				getImag().div(other));
+	}
+
+	public CDoubleDouble pow(CDoubleDouble other) {
+		return new CDoubleDouble(toBigComplexDecimal().pow(other.toBigComplexDecimal()));
+	}
+
+	/**
+	 * Trivial case of pow for integral exponent, by repeated squaring.
+	 */
+	public CDoubleDouble pow(int other) {
+		CDoubleDouble m = other >= 0 ? this : new CDoubleDouble(1, 0).div(this);
+		CDoubleDouble ans = new CDoubleDouble(1, 0);
+		for(int n=Math.abs(other);n>0;n>>=1) {
+			if((n & 1) == 1) {
+				ans = ans.mul(m);
+			}
+			if(n > 1) {
+				m = m.square();
+			}
+		}
+		return ans;
+	}
+
+	public CDoubleDouble exp() {
+		return new CDoubleDouble(toBigComplexDecimal().exp());
+	}
+
+	public double abs() {
+		return norm().sqrt().hi;
+	}
+
+	/**
+	 * |z|^2 = a^2 + b^2
+	 */
+	public DoubleDouble norm() {
+		return getReal().mul(getReal()).add(getImag().mul(getImag()));
+	}
+
+	public CDoubleDouble conj() {
+		return new CDoubleDouble(getReal(), getImag().negate());
+	}
+
+	/**
+	 * The arg rounded to a double, which only needs the high parts.
+	 */
+	public double arg() {
+		return Math.atan2(getImag().hi, getReal().hi);
+	}
+
+	public boolean isZero() {
+		return getReal().signum() == 0 && getImag().signum() == 0;
+	}
+
+	public boolean equals(CDoubleDouble other) {
+		return getReal().equals(other.getReal()) && getImag().equals(other.getImag());
+	}
+
+	public CDoubleDouble copy() {
+		return new CDoubleDouble(getReal(), getImag());
+	}
+
+	public BigComplexDecimal toBigComplexDecimal() {
+		return new BigComplexDecimal(getReal().toBigDecimal(), getImag().toBigDecimal(), DoubleDouble.CONTEXT);
+	}
+}
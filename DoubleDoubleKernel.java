@@ -0,0 +1,201 @@
+import java.math.BigDecimal;
+
+/**
+ * A counterpart to DoubleKernel in double-double precision, for views too
+ * deep for doubles but not deep enough to need perturbation. Each value is
+ * kept as a high and a low double in local variables, so nothing is
+ * allocated while iterating.
+ * Pixels are given as offsets from the center, which is set in full
+ * precision, the same way as for Perturbation.
+ * A state array may be reused for any number of pixels, but not shared
+ * between threads.
+ * @author Blake
+ */
+public abstract class DoubleDoubleKernel {
+
+	/**
+	 * How close z has to come back to an earlier value of z for the orbit
+	 * to count as periodic. 0 disables periodicity checking.
+	 */
+	protected double periodicityTolerance;
+	private double centerXHi;
+	private double centerXLo;
+	private double centerYHi;
+	private double centerYLo;
+
+	/**
+	 * Creates a state array large enough for this kernel.
+	 * @return A new state array owned by the caller.
+	 */
+	public double[] newState() {
+		return new double[4];
+	}
+
+	/**
+	 * Sets the point which pixel offsets are measured from.
+	 * @param x - The x coordinate of the center.
+	 * @param y - The y coordinate of the center.
+	 */
+	public void setCenter(BigDecimal x, BigDecimal y) {
+		DoubleDouble cx = DoubleDouble.valueOf(x);
+		DoubleDouble cy = DoubleDouble.valueOf(y);
+		centerXHi = cx.hi;
+		centerXLo = cx.lo;
+		centerYHi = cy.hi;
+		centerYLo = cy.lo;
+	}
+
+	/**
+	 * Iterates the pixel at the given offset from the center.
+	 * @param dx - The x offset of the pixel from the center.
+	 * @param dy - The y offset of the pixel from the center.
+	 * @param maxIterations - The maximum number of iterations before
+	 * the method returns a -1.
+	 * @param z - The state array. Holds the last value of z, rounded to
+	 * doubles, in z[0] and z[1] afterwards.
+	 * @return -1 if the maximum number of iterations has been reached.
+	 * Otherwise, returns the number of iterations before the bailout
+	 * condition was triggered.
+	 */
+	public abstract int iterate(double dx, double dy, int maxIterations, double[] z);
+
+	/**
+	 * Writes the coordinates of the pixel at the given offset from the
+	 * center into the state: x in z[0] and z[1], y in z[2] and z[3],
+	 * high part first.
+	 */
+	protected void coordinates(double dx, double dy, double[] z) {
+		double s = centerXHi + dx;
+		double v = s - centerXHi;
+		double e = (centerXHi - (s - v)) + (dx - v) + centerXLo;
+		z[0] = s + e;
+		z[1] = e - (z[0] - s);
+		s = centerYHi + dy;
+		v = s - centerYHi;
+		e = (centerYHi - (s - v)) + (dy - v) + centerYLo;
+		z[2] = s + e;
+		z[3] = e - (z[2] - s);
+	}
+
+	/**
+	 * Sets how close an orbit has to return to itself to be reported as
+	 * interior. Renderers scale this to the pixel size.
+	 * @param tolerance - The new tolerance, or 0 to disable periodicity checking.
+	 */
+	public void setPeriodicityTolerance(double tolerance) {
+		periodicityTolerance = tolerance;
+	}
+
+	public double getPeriodicityTolerance() {
+		return periodicityTolerance;
+	}
+}
+
+/**
+ * Double-double kernel for Mandelbrot. z = z ^ 2 + c starting from z = 0.
+ * @author Blake
+ */
+class MandelbrotDoubleDoubleKernel extends DoubleDoubleKernel {
+
+	private final double bailoutSquared;
+
+	public MandelbrotDoubleDoubleKernel(double bailoutValue) {
+		bailoutSquared = bailoutValue * bailoutValue;
+	}
+
+	@Override
+	public int iterate(double dx, double dy, int maxIterations, double[] z) {
+		coordinates(dx, dy, z);
+		return iterateQuadratic(0, 0, 0, 0, z[0], z[1], z[2], z[3],
+				bailoutSquared, periodicityTolerance, maxIterations, z);
+	}
+
+	/**
+	 * z = z ^ 2 + c in double-double, from the given z.
+	 * Only the high parts are used for the bailout, which does not need
+	 * the extra precision.
+	 */
+	static int iterateQuadratic(
+			double zrh, double zrl, double zih, double zil,
+			double crh, double crl, double cih, double cil,
+			double bailoutSquared, double tolerance, int maxIterations, double[] z) {
+		double snapRealHi = zrh;
+		double snapRealLo = zrl;
+		double snapImagHi = zih;
+		double snapImagLo = zil;
+		int steps = 0;
+		int limit = 1;
+		for(int i=0;i<maxIterations;i++) {
+			if(zrh * zrh + zih * zih >= bailoutSquared) {
+				z[0] = zrh;
+				z[1] = zih;
+				return i;
+			}
+			//zr ^ 2 and zi ^ 2 with their rounding errors, dropping lo * lo
+			double p = zrh * zrh;
+			double pe = Math.fma(zrh, zrh, -p) + 2 * zrh * zrl;
+			double q = zih * zih;
+			double qe = Math.fma(zih, zih, -q) + 2 * zih * zil;
+			double m = zrh * zih;
+			double me = Math.fma(zrh, zih, -m) + zrh * zil + zrl * zih;
+			//real part: p - q + cr, summing the high parts without error
+			double s = p - q;
+			double v = s - p;
+			double e = (p - (s - v)) + (-q - v) + (pe - qe);
+			double t = s + crh;
+			v = t - s;
+			e += (s - (t - v)) + (crh - v) + crl;
+			double nrh = t + e;
+			double nrl = e - (nrh - t);
+			//imaginary part: 2 * m + ci
+			s = 2 * m;
+			t = s + cih;
+			v = t - s;
+			e = (s - (t - v)) + (cih - v) + 2 * me + cil;
+			zih = t + e;
+			zil = e - (zih - t);
+			zrh = nrh;
+			zrl = nrl;
+			if(tolerance > 0) {
+				if(Math.abs((zrh - snapRealHi) + (zrl - snapRealLo)) < tolerance
+						&& Math.abs((zih - snapImagHi) + (zil - snapImagLo)) < tolerance) {
+					break;
+				}
+				if(++steps == limit) {
+					snapRealHi = zrh;
+					snapRealLo = zrl;
+					snapImagHi = zih;
+					snapImagLo = zil;
+					steps = 0;
+					limit <<= 1;
+				}
+			}
+		}
+		z[0] = zrh;
+		z[1] = zih;
+		return -1;
+	}
+}
+
+/**
+ * Double-double kernel for Julia. z = z ^ 2 + c for a fixed c,
+ * starting from the pixel.
+ * @author Blake
+ */
+class JuliaDoubleDoubleKernel extends DoubleDoubleKernel {
+
+	private final double cReal;
+	private final double cImag;
+
+	public JuliaDoubleDoubleKernel(CDouble c) {
+		cReal = c.getReal();
+		cImag = c.getImag();
+	}
+
+	@Override
+	public int iterate(double dx, double dy, int maxIterations, double[] z) {
+		coordinates(dx, dy, z);
+		return MandelbrotDoubleDoubleKernel.iterateQuadratic(z[0], z[1], z[2], z[3], cReal, 0, cImag, 0,
+				4, periodicityTolerance, maxIterations, z);
+	}
+}
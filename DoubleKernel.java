@@ -0,0 +1,595 @@
+/**
+ * An allocation free counterpart to Fractal which works on raw doubles.
+ * The value of z lives in a caller owned state array (z[0] is the real part,
+ * z[1] is the imaginary part) which every method reads and writes in place,
+ * so no objects are created while iterating.
+ * A state array may be reused for any number of pixels, but not shared
+ * between threads.
+ * @author Blake
+ */
+public abstract class DoubleKernel {
+
+	/**
+	 * How close z has to come back to an earlier value of z for the orbit
+	 * to count as periodic. 0 disables periodicity checking.
+	 */
+	protected double periodicityTolerance;
+
+	/**
+	 * Creates a state array large enough for this kernel.
+	 * @return A new state array owned by the caller.
+	 */
+	public double[] newState() {
+		return new double[2];
+	}
+
+	/**
+	 * Writes the starting value of z for a pixel into the state.
+	 * @param z - The state array.
+	 * @param x - The adjusted x coordinate of the pixel.
+	 * @param y - The adjusted y coordinate of the pixel.
+	 */
+	public abstract void start(double[] z, double x, double y);
+
+	/**
+	 * Replaces z in the state with the next value of z.
+	 * @param z - The state array.
+	 * @param x - The adjusted x coordinate of the pixel.
+	 * @param y - The adjusted y coordinate of the pixel.
+	 */
+	public abstract void func(double[] z, double x, double y);
+
+	/**
+	 * Returns true if the bailout condition has been reached.
+	 * @param z - The state array.
+	 * @param x - The adjusted x coordinate of the pixel.
+	 * @param y - The adjusted y coordinate of the pixel.
+	 */
+	public abstract boolean bailout(double[] z, double x, double y);
+
+	/**
+	 * The same as Fractal.iterate, but without any allocation.
+	 * @param x - The adjusted x coordinate of the pixel.
+	 * @param y - The adjusted y coordinate of the pixel.
+	 * @param maxIterations - The maximum number of iterations before
+	 * the method returns a -1.
+	 * @param z - The state array. Holds the last value of z afterwards.
+	 * @return -1 if the maximum number of iterations has been reached.
+	 * Otherwise, returns the number of iterations before the bailout
+	 * condition was triggered.
+	 */
+	public int iterate(double x, double y, int maxIterations, double[] z) {
+		start(z, x, y);
+		if(periodicityTolerance > 0) {
+			return iteratePeriodic(x, y, maxIterations, z);
+		}
+		for(int i=0;i<maxIterations;i++) {
+			if(bailout(z, x, y)) {
+				return i;
+			}
+			func(z, x, y);
+		}
+		return -1;
+	}
+
+	/**
+	 * The iterate loop with Brent style periodicity checking. z is compared
+	 * against a snapshot which is retaken each time the number of steps since
+	 * the last snapshot reaches the next power of 2, so a cycle of any length
+	 * is caught within a few multiples of its period.
+	 */
+	private int iteratePeriodic(double x, double y, int maxIterations, double[] z) {
+		double snapReal = z[0];
+		double snapImag = z[1];
+		int steps = 0;
+		int limit = 1;
+		for(int i=0;i<maxIterations;i++) {
+			if(bailout(z, x, y)) {
+				return i;
+			}
+			func(z, x, y);
+			if(Math.abs(z[0] - snapReal) < periodicityTolerance
+					&& Math.abs(z[1] - snapImag) < periodicityTolerance) {
+				return -1;
+			}
+			if(++steps == limit) {
+				snapReal = z[0];
+				snapImag = z[1];
+				steps = 0;
+				limit <<= 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the value renderers store in Frame.escapes for a pixel which
+	 * bailed out. Defaults to |z|.
+	 * @param z - The state array, as iterate left it.
+	 */
+	public float escape(double[] z) {
+		return (float) Math.sqrt(z[0] * z[0] + z[1] * z[1]);
+	}
+
+	/**
+	 * Sets how close an orbit has to return to itself to be reported as
+	 * interior. Renderers scale this to the pixel size.
+	 * @param tolerance - The new tolerance, or 0 to disable periodicity checking.
+	 */
+	public void setPeriodicityTolerance(double tolerance) {
+		periodicityTolerance = tolerance;
+	}
+
+	public double getPeriodicityTolerance() {
+		return periodicityTolerance;
+	}
+}
+
+/**
+ * Kernel for Multibrot. z = z ^ exponent + c
+ * Takes ln|z| and arg(z) once per step. Multibrot only uses it for
+ * exponents which are not integers; those go to IntegerbrotKernel.
+ * @author Blake
+ */
+class MultibrotKernel extends DoubleKernel {
+
+	private final double z0Real;
+	private final double z0Imag;
+	private final double expReal;
+	private final double expImag;
+	private final double bailoutSquared;
+
+	public MultibrotKernel(CDouble z0, CDouble exponent, double bailoutValue) {
+		z0Real = z0.getReal();
+		z0Imag = z0.getImag();
+		expReal = exponent.getReal();
+		expImag = exponent.getImag();
+		bailoutSquared = bailoutValue * bailoutValue;
+	}
+
+	@Override
+	public void start(double[] z, double x, double y) {
+		z[0] = z0Real;
+		z[1] = z0Imag;
+	}
+
+	/**
+	 * z1 ^ z2 = e ^ (z2 * ln|z1|) * e ^ (i * z2 * arg(z1)), the same as
+	 * CDouble.pow, 0 at z1 = 0.
+	 */
+	@Override
+	public void func(double[] z, double x, double y) {
+		double norm = z[0] * z[0] + z[1] * z[1];
+		if(norm == 0) {
+			z[0] = x;
+			z[1] = y;
+			return;
+		}
+		double logAbs = Math.log(norm) / 2;
+		double arg = Math.atan2(z[1], z[0]);
+		double hypot = Math.exp(expReal * logAbs - expImag * arg);
+		double angle = expImag * logAbs + expReal * arg;
+		z[0] = hypot * Math.cos(angle) + x;
+		z[1] = hypot * Math.sin(angle) + y;
+	}
+
+	@Override
+	public boolean bailout(double[] z, double x, double y) {
+		return z[0] * z[0] + z[1] * z[1] >= bailoutSquared;
+	}
+}
+
+/**
+ * Kernel for Integerbrot. z = z ^ exponent + c for integral exponents,
+ * by repeated squaring in the same order as CDouble.pow(int).
+ * iterate keeps z in local variables, like MandelbrotKernel.
+ * @author Blake
+ */
+class IntegerbrotKernel extends DoubleKernel {
+
+	private final double z0Real;
+	private final double z0Imag;
+	private final int exponent;
+	private final double bailoutSquared;
+
+	public IntegerbrotKernel(CDouble z0, int exponent, double bailoutValue) {
+		z0Real = z0.getReal();
+		z0Imag = z0.getImag();
+		this.exponent = exponent;
+		bailoutSquared = bailoutValue * bailoutValue;
+	}
+
+	@Override
+	public void start(double[] z, double x, double y) {
+		z[0] = z0Real;
+		z[1] = z0Imag;
+	}
+
+	@Override
+	public void func(double[] z, double x, double y) {
+		power(z[0], z[1], z);
+		z[0] += x;
+		z[1] += y;
+	}
+
+	/**
+	 * Writes z ^ exponent to out[0] and out[1].
+	 */
+	private void power(double zr, double zi, double[] out) {
+		//m is the value which is repeatedly squared
+		double mr = zr;
+		double mi = zi;
+		if(exponent < 0) {
+			double norm = mr * mr + mi * mi;
+			mr /= norm;
+			mi = -mi / norm;
+		}
+		double ar = 1;
+		double ai = 0;
+		boolean first = true;
+		for(int n=Math.abs(exponent);n>0;n>>=1) {
+			if((n & 1) == 1) {
+				if(first) {
+					ar = mr;
+					ai = mi;
+					first = false;
+				} else {
+					double t = ar * mr - ai * mi;
+					ai = ar * mi + ai * mr;
+					ar = t;
+				}
+			}
+			if(n > 1) {
+				double t = mr * mr - mi * mi;
+				mi = mr * mi + mi * mr;
+				mr = t;
+			}
+		}
+		out[0] = ar;
+		out[1] = ai;
+	}
+
+	@Override
+	public boolean bailout(double[] z, double x, double y) {
+		return z[0] * z[0] + z[1] * z[1] >= bailoutSquared;
+	}
+
+	@Override
+	public int iterate(double x, double y, int maxIterations, double[] z) {
+		double tolerance = periodicityTolerance;
+		double zr = z0Real;
+		double zi = z0Imag;
+		double snapReal = zr;
+		double snapImag = zi;
+		int steps = 0;
+		int limit = 1;
+		for(int i=0;i<maxIterations;i++) {
+			if(zr * zr + zi * zi >= bailoutSquared) {
+				z[0] = zr;
+				z[1] = zi;
+				return i;
+			}
+			//power, on locals
+			double mr = zr;
+			double mi = zi;
+			if(exponent < 0) {
+				double norm = mr * mr + mi * mi;
+				mr /= norm;
+				mi = -mi / norm;
+			}
+			double ar = 1;
+			double ai = 0;
+			boolean first = true;
+			for(int n=Math.abs(exponent);n>0;n>>=1) {
+				if((n & 1) == 1) {
+					if(first) {
+						ar = mr;
+						ai = mi;
+						first = false;
+					} else {
+						double t = ar * mr - ai * mi;
+						ai = ar * mi + ai * mr;
+						ar = t;
+					}
+				}
+				if(n > 1) {
+					double t = mr * mr - mi * mi;
+					mi = mr * mi + mi * mr;
+					mr = t;
+				}
+			}
+			zr = ar + x;
+			zi = ai + y;
+			if(tolerance > 0) {
+				if(Math.abs(zr - snapReal) < tolerance && Math.abs(zi - snapImag) < tolerance) {
+					break;
+				}
+				if(++steps == limit) {
+					snapReal = zr;
+					snapImag = zi;
+					steps = 0;
+					limit <<= 1;
+				}
+			}
+		}
+		z[0] = zr;
+		z[1] = zi;
+		return -1;
+	}
+}
+
+/**
+ * Kernel for Mandelbrot. z = z ^ 2 + c starting from z = 0.
+ * Compares |z| ^ 2 against the squared bailout so no square root is taken,
+ * and skips the main cardioid and the period 2 bulb, whose points never escape.
+ * @author Blake
+ */
+class MandelbrotKernel extends DoubleKernel {
+
+	private final double bailoutSquared;
+
+	public MandelbrotKernel(double bailoutValue) {
+		bailoutSquared = bailoutValue * bailoutValue;
+	}
+
+	@Override
+	public void start(double[] z, double x, double y) {
+		z[0] = 0;
+		z[1] = 0;
+	}
+
+	@Override
+	public void func(double[] z, double x, double y) {
+		double t = z[0] * z[0] - z[1] * z[1] + x;
+		z[1] = 2 * z[0] * z[1] + y;
+		z[0] = t;
+	}
+
+	@Override
+	public boolean bailout(double[] z, double x, double y) {
+		return z[0] * z[0] + z[1] * z[1] >= bailoutSquared;
+	}
+
+	/**
+	 * Returns true if c = x + y * i lies in the main cardioid or the period 2 bulb.
+	 * cardioid: q * (q + x - 1/4) <= y ^ 2 / 4, where q = (x - 1/4) ^ 2 + y ^ 2
+	 * bulb: (x + 1) ^ 2 + y ^ 2 <= 1/16
+	 */
+	public static boolean isInterior(double x, double y) {
+		double y2 = y * y;
+		double xq = x - 0.25;
+		double q = xq * xq + y2;
+		if(q * (q + xq) <= 0.25 * y2) {
+			return true;
+		}
+		double xb = x + 1;
+		return xb * xb + y2 <= 0.0625;
+	}
+
+	@Override
+	public int iterate(double x, double y, int maxIterations, double[] z) {
+		if(isInterior(x, y)) {
+			z[0] = 0;
+			z[1] = 0;
+			return -1;
+		}
+		double tolerance = periodicityTolerance;
+		double zr = 0;
+		double zi = 0;
+		double snapReal = 0;
+		double snapImag = 0;
+		int steps = 0;
+		int limit = 1;
+		for(int i=0;i<maxIterations;i++) {
+			double zr2 = zr * zr;
+			double zi2 = zi * zi;
+			if(zr2 + zi2 >= bailoutSquared) {
+				z[0] = zr;
+				z[1] = zi;
+				return i;
+			}
+			zi = 2 * zr * zi + y;
+			zr = zr2 - zi2 + x;
+			if(tolerance > 0) {
+				if(Math.abs(zr - snapReal) < tolerance && Math.abs(zi - snapImag) < tolerance) {
+					break;
+				}
+				if(++steps == limit) {
+					snapReal = zr;
+					snapImag = zi;
+					steps = 0;
+					limit <<= 1;
+				}
+			}
+		}
+		z[0] = zr;
+		z[1] = zi;
+		return -1;
+	}
+}
+
+/**
+ * Kernel for Julia. z = z ^ 2 + c for a fixed c.
+ * Compares |z| ^ 2 against 4 so no square root is taken.
+ * @author Blake
+ */
+class JuliaKernel extends DoubleKernel {
+
+	private final double cReal;
+	private final double cImag;
+
+	public JuliaKernel(CDouble c) {
+		cReal = c.getReal();
+		cImag = c.getImag();
+	}
+
+	@Override
+	public void start(double[] z, double x, double y) {
+		z[0] = x;
+		z[1] = y;
+	}
+
+	@Override
+	public void func(double[] z, double x, double y) {
+		double t = z[0] * z[0] - z[1] * z[1] + cReal;
+		z[1] = 2 * z[0] * z[1] + cImag;
+		z[0] = t;
+	}
+
+	@Override
+	public boolean bailout(double[] z, double x, double y) {
+		return z[0] * z[0] + z[1] * z[1] >= 4;
+	}
+
+	@Override
+	public int iterate(double x, double y, int maxIterations, double[] z) {
+		double tolerance = periodicityTolerance;
+		double zr = x;
+		double zi = y;
+		double snapReal = x;
+		double snapImag = y;
+		int steps = 0;
+		int limit = 1;
+		for(int i=0;i<maxIterations;i++) {
+			double zr2 = zr * zr;
+			double zi2 = zi * zi;
+			if(zr2 + zi2 >= 4) {
+				z[0] = zr;
+				z[1] = zi;
+				return i;
+			}
+			zi = 2 * zr * zi + cImag;
+			zr = zr2 - zi2 + cReal;
+			if(tolerance > 0) {
+				if(Math.abs(zr - snapReal) < tolerance && Math.abs(zi - snapImag) < tolerance) {
+					break;
+				}
+				if(++steps == limit) {
+					snapReal = zr;
+					snapImag = zi;
+					steps = 0;
+					limit <<= 1;
+				}
+			}
+		}
+		z[0] = zr;
+		z[1] = zi;
+		return -1;
+	}
+}
+
+/**
+ * Kernel for PolynomialFractal. z = p(z)
+ * @author Blake
+ */
+class PolynomialKernel extends DoubleKernel {
+
+	protected final CPolynomial polynomial;
+	private final double z0Real;
+	private final double z0Imag;
+	private final double bailoutSquared;
+
+	public PolynomialKernel(CDouble z0, CPolynomial polynomial) {
+		z0Real = z0.getReal();
+		z0Imag = z0.getImag();
+		this.polynomial = polynomial;
+		bailoutSquared = (double) polynomial.degree() * polynomial.degree();
+	}
+
+	@Override
+	public void start(double[] z, double x, double y) {
+		z[0] = z0Real;
+		z[1] = z0Imag;
+	}
+
+	@Override
+	public void func(double[] z, double x, double y) {
+		polynomial.sum(z[0], z[1], z, 0);
+	}
+
+	@Override
+	public boolean bailout(double[] z, double x, double y) {
+		return z[0] * z[0] + z[1] * z[1] >= bailoutSquared;
+	}
+}
+
+/**
+ * Kernel for Newton. z = z - p(z) / p'(z) starting from the pixel,
+ * until z is within the tolerance of a root.
+ * Uses z[2] and z[3] of the state as scratch space.
+ * @author Blake
+ */
+class NewtonKernel extends PolynomialKernel {
+
+	private final double[] rootReal;
+	private final double[] rootImag;
+	private final double[] tolerancesSquared;
+
+	/**
+	 * Constructor for this kernel.
+	 * @param polynomial - The polynomial to find the roots of.
+	 * @param roots - Its distinct roots.
+	 * @param tolerances - How close z has to come to each root.
+	 */
+	public NewtonKernel(CPolynomial polynomial, CDouble[] roots, double[] tolerances) {
+		super(new CDouble(0, 0), polynomial);
+		rootReal = new double[roots.length];
+		rootImag = new double[roots.length];
+		tolerancesSquared = new double[roots.length];
+		for(int i=0;i<roots.length;i++) {
+			rootReal[i] = roots[i].getReal();
+			rootImag[i] = roots[i].getImag();
+			tolerancesSquared[i] = tolerances[i] * tolerances[i];
+		}
+	}
+
+	@Override
+	public void start(double[] z, double x, double y) {
+		z[0] = x;
+		z[1] = y;
+	}
+
+	@Override
+	public double[] newState() {
+		return new double[4];
+	}
+
+	@Override
+	public void func(double[] z, double x, double y) {
+		double zr = z[0];
+		double zi = z[1];
+		polynomial.sumWithDerivative(zr, zi, z, 0);
+		double norm = z[2] * z[2] + z[3] * z[3];
+		double qr = (z[0] * z[2] + z[1] * z[3]) / norm;
+		double qi = (z[1] * z[2] - z[0] * z[3]) / norm;
+		z[0] = zr - qr;
+		z[1] = zi - qi;
+	}
+
+	@Override
+	public boolean bailout(double[] z, double x, double y) {
+		return root(z[0], z[1]) != -1;
+	}
+
+	/**
+	 * Returns the index of the root the pixel converged to.
+	 */
+	@Override
+	public float escape(double[] z) {
+		return root(z[0], z[1]);
+	}
+
+	/**
+	 * Returns the index of the root within the tolerance of z, or -1.
+	 */
+	private int root(double zr, double zi) {
+		for(int i=0;i<rootReal.length;i++) {
+			double dr = zr - rootReal[i];
+			double di = zi - rootImag[i];
+			if(dr * dr + di * di < tolerancesSquared[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
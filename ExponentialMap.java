@@ -0,0 +1,215 @@
+import java.math.BigDecimal;
+
+/**
+ * The geometry of an exponential map: the plane around a zoom target
+ * sampled in log-polar coordinates. Column x of the strip is the angle
+ * 2 pi x / width, and row y the radius maxRadius * exp(-2 pi y / width),
+ * so samples are square, every row is the previous one scaled down by the
+ * same factor, and a strip a few thousand rows tall covers a zoom from the
+ * whole set down to the limit of perturbation.
+ * Since consecutive frames of a zoom overlap almost completely, a zoom
+ * animation is rendered once as a strip by Renderer.renderExponentialMap,
+ * and project then resamples it into frames at any scale, which takes
+ * milliseconds per frame instead of a full render.
+ * @author Blake
+ */
+public class ExponentialMap {
+
+	/**
+	 * The precise center of the zoom.
+	 */
+	public final BigDecimal centerX;
+	public final BigDecimal centerY;
+	/**
+	 * The radius of the first row and the smallest radius covered.
+	 */
+	public final double maxRadius;
+	public final double minRadius;
+	/**
+	 * The number of angles, and the number of radii, sampled.
+	 */
+	public final int width;
+	public final int height;
+	private final double[] cos;
+	private final double[] sin;
+	private volatile Projection projection;
+
+	/**
+	 * Constructor for this ExponentialMap.
+	 * @param centerX - The x coordinate of the zoom target, in full precision.
+	 * @param centerY - The y coordinate of the zoom target, in full precision.
+	 * @param maxRadius - The largest distance from the target sampled.
+	 * @param minRadius - The smallest distance from the target sampled.
+	 * @param width - The number of samples around each circle.
+	 */
+	public ExponentialMap(
+			BigDecimal centerX,
+			BigDecimal centerY,
+			double maxRadius,
+			double minRadius,
+			int width) {
+		if(!(minRadius > 0 && maxRadius > minRadius)) {
+			throw new IllegalArgumentException("Need 0 < minRadius < maxRadius: " + minRadius + ", " + maxRadius);
+		}
+		if(width < 1) {
+			throw new IllegalArgumentException("width must be positive: " + width);
+		}
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.maxRadius = maxRadius;
+		this.minRadius = minRadius;
+		this.width = width;
+		height = (int) Math.ceil(Math.log(maxRadius / minRadius) * width / (2 * Math.PI)) + 1;
+		cos = new double[width];
+		sin = new double[width];
+		for(int x=0;x<width;x++) {
+			double angle = 2 * Math.PI * x / width;
+			cos[x] = Math.cos(angle);
+			sin[x] = Math.sin(angle);
+		}
+	}
+
+	/**
+	 * Creates the exponential map for a zoom from a view into its center
+	 * until the view is endScaleX wide. The strip reaches the corners of the
+	 * first frame and half a pixel of the last one, and has as many samples
+	 * around each circle as the frame's circumference in pixels, so every
+	 * pixel of every frame has a sample of its own.
+	 * @param view - The first frame of the zoom.
+	 * @param endScaleX - The width of the last frame in the complex plane.
+	 * @return The map covering the whole zoom.
+	 */
+	public static ExponentialMap forZoom(Viewport view, double endScaleX) {
+		double maxRadius = Math.hypot(view.scaleX, view.scaleY) / 2;
+		double minRadius = endScaleX / view.width / 2;
+		int width = (int) Math.ceil(Math.PI * Math.max(view.width, view.height));
+		return new ExponentialMap(view.getPreciseCenterX(), view.getPreciseCenterY(),
+				maxRadius, minRadius, width);
+	}
+
+	/**
+	 * Returns the distance from the center of the samples in a row.
+	 */
+	public double radius(int y) {
+		return maxRadius * Math.exp(-2 * Math.PI * y / width);
+	}
+
+	/**
+	 * Returns the distance between neighboring samples of a row, which is
+	 * also the distance to the next row.
+	 */
+	public double spacing(int y) {
+		return radius(y) * 2 * Math.PI / width;
+	}
+
+	/**
+	 * Returns the x offset from the center of the sample at (x, y).
+	 */
+	public double xOffset(int x, int y) {
+		return radius(y) * cos[x];
+	}
+
+	/**
+	 * Returns the y offset from the center of the sample at (x, y).
+	 */
+	public double yOffset(int x, int y) {
+		return radius(y) * sin[x];
+	}
+
+	/**
+	 * Computes the x offsets of a whole row, which are the cosines scaled
+	 * by the row's radius.
+	 * @param out - The output, at least width long.
+	 */
+	void xOffsets(int y, double[] out) {
+		double r = radius(y);
+		for(int x=0;x<width;x++) {
+			out[x] = r * cos[x];
+		}
+	}
+
+	/**
+	 * Computes the y offsets of a whole row.
+	 * @param out - The output, at least width long.
+	 */
+	void yOffsets(int y, double[] out) {
+		double r = radius(y);
+		for(int x=0;x<width;x++) {
+			out[x] = r * sin[x];
+		}
+	}
+
+	/**
+	 * Resamples part of a rendered strip into a frame of a view around the
+	 * same center, taking the nearest sample for each pixel. Pixels nearer
+	 * to the center than minRadius take the innermost row, pixels farther
+	 * than maxRadius the outermost, so views should stay inside the strip.
+	 * The column and log radius of each pixel are computed once per frame
+	 * size, since zooming only shifts the rows, so a frame costs an addition
+	 * and a lookup per pixel.
+	 * @param strip - The output of Renderer.renderExponentialMap for this map.
+	 * @param scaleX - The width of the view in the complex plane.
+	 * @param scaleY - The height of the view in the complex plane.
+	 * @param frame - The output. Its size is the size of the view in pixels.
+	 */
+	public void project(Frame strip, double scaleX, double scaleY, Frame frame) {
+		Projection projection = this.projection;
+		if(projection == null || !projection.fits(frame.width, frame.height, scaleY / scaleX)) {
+			projection = new Projection(frame.width, frame.height, scaleY / scaleX);
+			this.projection = projection;
+		}
+		//rows of the pixels of a view 1 pixel per unit wide, shifted to this scale
+		double shift = Math.log(maxRadius * frame.width / scaleX) * width / (2 * Math.PI);
+		double last = height - 1;
+		int[] columns = projection.columns;
+		double[] rows = projection.rows;
+		for(int i=0;i<columns.length;i++) {
+			double row = shift + rows[i];
+			int source = (row >= last ? height - 1 : row <= 0 ? 0 : (int) (row + 0.5)) * width + columns[i];
+			frame.iterations[i] = strip.iterations[source];
+			frame.escapes[i] = strip.escapes[source];
+		}
+	}
+
+	/**
+	 * The column of each pixel of a frame and its row at a scale of one
+	 * pixel per unit, -log(r) in samples.
+	 */
+	private final class Projection {
+
+		final int w;
+		final int h;
+		final double aspect;
+		final int[] columns;
+		final double[] rows;
+
+		Projection(int w, int h, double aspect) {
+			this.w = w;
+			this.h = h;
+			this.aspect = aspect;
+			columns = new int[w * h];
+			rows = new double[w * h];
+			double samplesPerRadian = width / (2 * Math.PI);
+			for(int py=0;py<h;py++) {
+				//the same offsets as Viewport.xOffset and yOffset
+				double dy = (py - h / 2) * aspect * w / h;
+				for(int px=0;px<w;px++) {
+					double dx = px - w / 2;
+					int index = py * w + px;
+					double r2 = dx * dx + dy * dy;
+					rows[index] = r2 == 0 ? Double.POSITIVE_INFINITY : -0.5 * Math.log(r2) * samplesPerRadian;
+					int column = (int) Math.round(Math.atan2(dy, dx) * samplesPerRadian);
+					columns[index] = Math.floorMod(column, width);
+				}
+			}
+		}
+
+		boolean fits(int w, int h, double aspect) {
+			return this.w == w && this.h == h && this.aspect == aspect;
+		}
+	}
+
+	public String toString() {
+		return String.format("ExponentialMap[%dx%d, radius %g to %g]", width, height, maxRadius, minRadius);
+	}
+}
@@ -0,0 +1,722 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A complex formula parsed from text, such as z^3 + c*z - 1, or a condition
+ * on one, such as |z| > 2 || re(z) < -10.
+ * The variables are z and c, the pixel; the constants are i, pi and e and
+ * numbers such as 2, 0.5 or 1e-3, which may be followed by i or a variable
+ * to multiply them (2z, 0.156i). The operators are + - * / ^ and |x| for
+ * the absolute value, and the functions are exp, log, sqrt, sin, cos,
+ * sinh, cosh, conj, abs, norm (|x| ^ 2), re, im and arg.
+ * Conditions compare the real parts of two expressions with < <= > >=,
+ * combined with && and ||.
+ *
+ * Formulas are simplified while they are parsed: constants are folded,
+ * identities such as x + 0, x * 1 and x ^ 1 are dropped, integer powers are
+ * expanded into squarings and multiplications, and |x| > r becomes
+ * norm(x) > r ^ 2 so no square root is taken. Identical subexpressions
+ * are the same Node, and operations on values known to be real skip the
+ * terms which would be 0.
+ * evaluate and test give exactly the results of the kernel FormulaCompiler
+ * generates, operation for operation.
+ * @author Blake
+ */
+public class Formula {
+
+	/**
+	 * The most an integer power is expanded into multiplications.
+	 */
+	private static final int MAX_EXPANDED_POWER = 64;
+
+	enum Op {
+		NUMBER, Z, C,
+		NEG, ADD, SUB, MUL, DIV, SQUARE, POW,
+		EXP, LOG, SQRT, SIN, COS, SINH, COSH, CONJ, ABS, NORM, RE, IM, ARG,
+		LESS, LESS_EQUAL, GREATER, GREATER_EQUAL, AND, OR;
+
+		boolean isCondition() {
+			return ordinal() >= LESS.ordinal();
+		}
+	}
+
+	/**
+	 * A node of a simplified formula. Nodes are immutable and shared.
+	 */
+	static final class Node {
+
+		final Op op;
+		final Node a;
+		final Node b;
+		/**
+		 * The value of a NUMBER.
+		 */
+		final double real;
+		final double imag;
+		/**
+		 * Whether the value is known to be real, in which case its imaginary
+		 * part is exactly 0 and is never computed.
+		 */
+		final boolean isReal;
+		final int id;
+
+		private Node(Op op, Node a, Node b, double real, double imag, boolean isReal, int id) {
+			this.op = op;
+			this.a = a;
+			this.b = b;
+			this.real = real;
+			this.imag = imag;
+			this.isReal = isReal;
+			this.id = id;
+		}
+
+		boolean isNumber(double value) {
+			return op == Op.NUMBER && real == value && imag == 0;
+		}
+
+		public String toString() {
+			switch(op) {
+			case NUMBER:
+				return imag == 0 ? Double.toString(real) : "(" + real + (imag < 0 ? "" : "+") + imag + "i)";
+			case Z:
+				return "z";
+			case C:
+				return "c";
+			case NEG:
+				return "-(" + a + ")";
+			case ADD:
+				return "(" + a + " + " + b + ")";
+			case SUB:
+				return "(" + a + " - " + b + ")";
+			case MUL:
+				return "(" + a + " * " + b + ")";
+			case DIV:
+				return "(" + a + " / " + b + ")";
+			case SQUARE:
+				return "(" + a + ")^2";
+			case POW:
+				return "(" + a + ")^(" + b + ")";
+			case LESS:
+				return a + " < " + b;
+			case LESS_EQUAL:
+				return a + " <= " + b;
+			case GREATER:
+				return a + " > " + b;
+			case GREATER_EQUAL:
+				return a + " >= " + b;
+			case AND:
+				return "(" + a + " && " + b + ")";
+			case OR:
+				return "(" + a + " || " + b + ")";
+			default:
+				return op.name().toLowerCase() + "(" + a + ")";
+			}
+		}
+	}
+
+	private final String text;
+	private final Node root;
+	private final Map<String, Node> nodes = new HashMap<>();
+	//the parser's position in text
+	private int pos;
+
+	/**
+	 * Parses and simplifies an expression.
+	 * @param text - The expression, in z and c.
+	 * @return The formula.
+	 * @throws InvalidFractalException If the text is not a valid expression.
+	 */
+	public static Formula expression(String text) throws InvalidFractalException {
+		return new Formula(text, false);
+	}
+
+	/**
+	 * Parses and simplifies a condition.
+	 * @param text - The condition, in z and c.
+	 * @return The formula.
+	 * @throws InvalidFractalException If the text is not a valid condition.
+	 */
+	public static Formula condition(String text) throws InvalidFractalException {
+		return new Formula(text, true);
+	}
+
+	private Formula(String text, boolean condition) throws InvalidFractalException {
+		this.text = text.trim();
+		Node root = condition ? parseOr() : parseExpression();
+		skipSpaces();
+		if(pos < this.text.length()) {
+			throw error("Unexpected '" + this.text.charAt(pos) + "'");
+		}
+		this.root = root;
+	}
+
+	Node getRoot() {
+		return root;
+	}
+
+	/**
+	 * Returns whether this condition only ever tests for z escaping, that
+	 * is it only compares with > and >=, so an orbit caught in a cycle can
+	 * never meet it.
+	 */
+	public boolean isEscapeCondition() {
+		return isEscape(root);
+	}
+
+	private static boolean isEscape(Node node) {
+		switch(node.op) {
+		case AND:
+		case OR:
+			return isEscape(node.a) && isEscape(node.b);
+		case GREATER:
+		case GREATER_EQUAL:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Evaluates this expression.
+	 * @param zr - The real part of z.
+	 * @param zi - The imaginary part of z.
+	 * @param x - The real part of c.
+	 * @param y - The imaginary part of c.
+	 * @return The real and imaginary parts of the value.
+	 */
+	public double[] evaluate(double zr, double zi, double x, double y) {
+		return evaluate(root, zr, zi, x, y);
+	}
+
+	/**
+	 * Tests this condition.
+	 * @param zr - The real part of z.
+	 * @param zi - The imaginary part of z.
+	 * @param x - The real part of c.
+	 * @param y - The imaginary part of c.
+	 */
+	public boolean test(double zr, double zi, double x, double y) {
+		return test(root, zr, zi, x, y);
+	}
+
+	private static boolean test(Node node, double zr, double zi, double x, double y) {
+		switch(node.op) {
+		case AND:
+			return test(node.a, zr, zi, x, y) && test(node.b, zr, zi, x, y);
+		case OR:
+			return test(node.a, zr, zi, x, y) || test(node.b, zr, zi, x, y);
+		default:
+			double a = evaluate(node.a, zr, zi, x, y)[0];
+			double b = evaluate(node.b, zr, zi, x, y)[0];
+			switch(node.op) {
+			case LESS:
+				return a < b;
+			case LESS_EQUAL:
+				return a <= b;
+			case GREATER:
+				return a > b;
+			default:
+				return a >= b;
+			}
+		}
+	}
+
+	private static double[] evaluate(Node node, double zr, double zi, double x, double y) {
+		switch(node.op) {
+		case NUMBER:
+			return new double[] {node.real, node.imag};
+		case Z:
+			return new double[] {zr, zi};
+		case C:
+			return new double[] {x, y};
+		default:
+			double[] a = evaluate(node.a, zr, zi, x, y);
+			double[] b = node.b == null ? null : evaluate(node.b, zr, zi, x, y);
+			return apply(node, a, b);
+		}
+	}
+
+	/**
+	 * Applies the operation of a node to the values of its operands.
+	 * FormulaCompiler.emit writes out the same arithmetic as Java source,
+	 * so any change here has to be made there too.
+	 */
+	static double[] apply(Node node, double[] av, double[] bv) {
+		boolean aReal = node.a.isReal;
+		boolean bReal = node.b != null && node.b.isReal;
+		double ar = av[0];
+		double ai = aReal ? 0 : av[1];
+		double br = bv == null ? 0 : bv[0];
+		double bi = bv == null || bReal ? 0 : bv[1];
+		double re;
+		double im;
+		switch(node.op) {
+		case NEG:
+			re = -ar;
+			im = -ai;
+			break;
+		case ADD:
+			re = ar + br;
+			im = aReal ? bi : bReal ? ai : ai + bi;
+			break;
+		case SUB:
+			re = ar - br;
+			im = aReal ? -bi : bReal ? ai : ai - bi;
+			break;
+		case MUL:
+			if(aReal || bReal) {
+				re = ar * br;
+				im = aReal ? ar * bi : ai * br;
+			} else {
+				re = ar * br - ai * bi;
+				im = ar * bi + ai * br;
+			}
+			break;
+		case DIV:
+			if(bReal) {
+				re = ar / br;
+				im = ai / br;
+			} else {
+				double d = br * br + bi * bi;
+				re = (ar * br + ai * bi) / d;
+				im = (ai * br - ar * bi) / d;
+			}
+			break;
+		case SQUARE:
+			re = ar * ar - ai * ai;
+			im = 2 * ar * ai;
+			break;
+		case POW: {
+			//exp(b * log(a)), with 0 ^ 0 = 1 and 0 ^ b = 0
+			double n = ar * ar + ai * ai;
+			double lr = 0.5 * Math.log(n);
+			double la = Math.atan2(ai, ar);
+			double mr = br * lr - bi * la;
+			double mi = br * la + bi * lr;
+			double e = Math.exp(mr);
+			re = n == 0 ? (br == 0 && bi == 0 ? 1 : 0) : e * Math.cos(mi);
+			im = n == 0 ? 0 : e * Math.sin(mi);
+			break;
+		}
+		case EXP: {
+			double e = Math.exp(ar);
+			re = e * Math.cos(ai);
+			im = e * Math.sin(ai);
+			break;
+		}
+		case LOG:
+			re = 0.5 * Math.log(ar * ar + ai * ai);
+			im = Math.atan2(ai, ar);
+			break;
+		case SQRT: {
+			double r = Math.sqrt(ar * ar + ai * ai);
+			re = Math.sqrt((r + ar) * 0.5);
+			im = Math.copySign(Math.sqrt((r - ar) * 0.5), ai);
+			break;
+		}
+		case SIN:
+			re = Math.sin(ar) * Math.cosh(ai);
+			im = Math.cos(ar) * Math.sinh(ai);
+			break;
+		case COS:
+			re = Math.cos(ar) * Math.cosh(ai);
+			im = -(Math.sin(ar) * Math.sinh(ai));
+			break;
+		case SINH:
+			re = Math.sinh(ar) * Math.cos(ai);
+			im = Math.cosh(ar) * Math.sin(ai);
+			break;
+		case COSH:
+			re = Math.cosh(ar) * Math.cos(ai);
+			im = Math.sinh(ar) * Math.sin(ai);
+			break;
+		case CONJ:
+			re = ar;
+			im = -ai;
+			break;
+		case ABS:
+			re = aReal ? Math.abs(ar) : Math.sqrt(ar * ar + ai * ai);
+			im = 0;
+			break;
+		case NORM:
+			re = ar * ar + ai * ai;
+			im = 0;
+			break;
+		case RE:
+			re = ar;
+			im = 0;
+			break;
+		case IM:
+			re = ai;
+			im = 0;
+			break;
+		case ARG:
+			re = Math.atan2(ai, ar);
+			im = 0;
+			break;
+		default:
+			throw new IllegalArgumentException("Not a value: " + node.op);
+		}
+		return new double[] {re, node.isReal ? 0 : im};
+	}
+
+	/**
+	 * Returns the simplified node for an operation, the same node for the
+	 * same operation on the same operands.
+	 */
+	private Node make(Op op, Node a, Node b) {
+		//constant folding
+		if(!op.isCondition() && a.op == Op.NUMBER && (b == null || b.op == Op.NUMBER)) {
+			double[] value = apply(intern(op, a, b, 0, 0),
+					new double[] {a.real, a.imag},
+					b == null ? null : new double[] {b.real, b.imag});
+			return number(value[0], value[1]);
+		}
+		switch(op) {
+		case NEG:
+			if(a.op == Op.NEG) {
+				return a.a;
+			}
+			break;
+		case ADD:
+			if(a.isNumber(0)) {
+				return b;
+			}
+			if(b.isNumber(0)) {
+				return a;
+			}
+			break;
+		case SUB:
+			if(b.isNumber(0)) {
+				return a;
+			}
+			if(a.isNumber(0)) {
+				return make(Op.NEG, b, null);
+			}
+			break;
+		case MUL:
+			if(a.isNumber(1)) {
+				return b;
+			}
+			if(b.isNumber(1)) {
+				return a;
+			}
+			if(a.isNumber(-1)) {
+				return make(Op.NEG, b, null);
+			}
+			if(b.isNumber(-1)) {
+				return make(Op.NEG, a, null);
+			}
+			if(a == b) {
+				return make(Op.SQUARE, a, null);
+			}
+			break;
+		case DIV:
+			if(b.isNumber(1)) {
+				return a;
+			}
+			//dividing by a power of 2 is exactly multiplying by its inverse
+			if(b.op == Op.NUMBER && b.imag == 0 && Double.isFinite(1 / b.real)
+					&& Math.abs(b.real) == Math.scalb(1.0, Math.getExponent(b.real))) {
+				return make(Op.MUL, a, number(1 / b.real, 0));
+			}
+			break;
+		case POW:
+			if(b.op == Op.NUMBER && b.imag == 0) {
+				if(b.real == 0.5) {
+					return make(Op.SQRT, a, null);
+				}
+				if(b.real == Math.rint(b.real) && Math.abs(b.real) <= MAX_EXPANDED_POWER) {
+					return power(a, (int) b.real);
+				}
+			}
+			break;
+		case LESS:
+		case LESS_EQUAL:
+		case GREATER:
+		case GREATER_EQUAL:
+			//|x| compared with r >= 0 is norm(x) compared with r ^ 2
+			if(a.op == Op.ABS && !a.a.isReal && b.op == Op.NUMBER && b.imag == 0 && b.real >= 0) {
+				return intern(op, make(Op.NORM, a.a, null), number(b.real * b.real, 0), 0, 0);
+			}
+			if(b.op == Op.ABS && !b.a.isReal && a.op == Op.NUMBER && a.imag == 0 && a.real >= 0) {
+				return intern(op, number(a.real * a.real, 0), make(Op.NORM, b.a, null), 0, 0);
+			}
+			break;
+		default:
+			break;
+		}
+		return intern(op, a, b, 0, 0);
+	}
+
+	/**
+	 * a ^ n by repeated squaring, sharing the squares.
+	 */
+	private Node power(Node a, int n) {
+		if(n == 0) {
+			return number(1, 0);
+		}
+		if(n < 0) {
+			return make(Op.DIV, number(1, 0), power(a, -n));
+		}
+		Node result = null;
+		Node base = a;
+		for(;n>0;n>>=1) {
+			if((n & 1) == 1) {
+				result = result == null ? base : make(Op.MUL, result, base);
+			}
+			if(n > 1) {
+				base = make(Op.SQUARE, base, null);
+			}
+		}
+		return result;
+	}
+
+	private Node number(double real, double imag) {
+		return intern(Op.NUMBER, null, null, real, imag);
+	}
+
+	private Node intern(Op op, Node a, Node b, double real, double imag) {
+		String key = op + " " + (a == null ? "" : a.id) + " " + (b == null ? "" : b.id)
+				+ " " + Double.doubleToLongBits(real) + " " + Double.doubleToLongBits(imag);
+		Node node = nodes.get(key);
+		if(node == null) {
+			node = new Node(op, a, b, real, imag, isReal(op, a, b, imag), nodes.size());
+			nodes.put(key, node);
+		}
+		return node;
+	}
+
+	private static boolean isReal(Op op, Node a, Node b, double imag) {
+		switch(op) {
+		case NUMBER:
+			return imag == 0;
+		case Z:
+		case C:
+		case POW:
+		case LOG:
+		case SQRT:
+			return false;
+		case ABS:
+		case NORM:
+		case RE:
+		case IM:
+		case ARG:
+			return true;
+		default:
+			return a.isReal && (b == null || b.isReal);
+		}
+	}
+
+	private InvalidFractalException error(String message) {
+		return new InvalidFractalException(message + " at " + pos + " in " + text);
+	}
+
+	private void skipSpaces() {
+		while(pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+			pos++;
+		}
+	}
+
+	/**
+	 * Skips spaces and consumes the token if it comes next.
+	 */
+	private boolean accept(String token) {
+		skipSpaces();
+		if(text.startsWith(token, pos)) {
+			pos += token.length();
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(String token) throws InvalidFractalException {
+		if(!accept(token)) {
+			throw error("Expected '" + token + "'");
+		}
+	}
+
+	private Node parseOr() throws InvalidFractalException {
+		Node node = parseAnd();
+		while(accept("||")) {
+			node = make(Op.OR, node, parseAnd());
+		}
+		return node;
+	}
+
+	private Node parseAnd() throws InvalidFractalException {
+		Node node = parseComparison();
+		while(accept("&&")) {
+			node = make(Op.AND, node, parseComparison());
+		}
+		return node;
+	}
+
+	private Node parseComparison() throws InvalidFractalException {
+		Node left = parseExpression();
+		Op op;
+		if(accept("<=")) {
+			op = Op.LESS_EQUAL;
+		} else if(accept(">=")) {
+			op = Op.GREATER_EQUAL;
+		} else if(accept("<")) {
+			op = Op.LESS;
+		} else if(accept(">")) {
+			op = Op.GREATER;
+		} else {
+			throw error("Expected a comparison");
+		}
+		return make(op, left, parseExpression());
+	}
+
+	private Node parseExpression() throws InvalidFractalException {
+		Node node = parseTerm();
+		while(true) {
+			if(accept("+")) {
+				node = make(Op.ADD, node, parseTerm());
+			} else if(accept("-")) {
+				node = make(Op.SUB, node, parseTerm());
+			} else {
+				return node;
+			}
+		}
+	}
+
+	private Node parseTerm() throws InvalidFractalException {
+		Node node = parseUnary();
+		while(true) {
+			if(accept("*")) {
+				node = make(Op.MUL, node, parseUnary());
+			} else if(accept("/")) {
+				node = make(Op.DIV, node, parseUnary());
+			} else if(pos < text.length()
+					&& (Character.isLetter(text.charAt(pos)) || text.charAt(pos) == '(')) {
+				//implicit multiplication, as in 2z or 3(z + 1)
+				node = make(Op.MUL, node, parsePower());
+			} else {
+				return node;
+			}
+		}
+	}
+
+	private Node parseUnary() throws InvalidFractalException {
+		if(accept("-")) {
+			return make(Op.NEG, parseUnary(), null);
+		}
+		if(accept("+")) {
+			return parseUnary();
+		}
+		return parsePower();
+	}
+
+	/**
+	 * ^ binds tighter than a leading minus and groups to the right:
+	 * -z^2 is -(z^2) and z^-2 is z^(-2).
+	 */
+	private Node parsePower() throws InvalidFractalException {
+		Node node = parsePrimary();
+		if(accept("^")) {
+			return make(Op.POW, node, parseUnary());
+		}
+		return node;
+	}
+
+	private Node parsePrimary() throws InvalidFractalException {
+		skipSpaces();
+		if(pos >= text.length()) {
+			throw error("Unexpected end");
+		}
+		char ch = text.charAt(pos);
+		if(accept("(")) {
+			Node node = parseExpression();
+			expect(")");
+			return node;
+		}
+		if(accept("|")) {
+			Node node = parseExpression();
+			expect("|");
+			return make(Op.ABS, node, null);
+		}
+		if(Character.isDigit(ch) || ch == '.') {
+			return parseNumber();
+		}
+		if(Character.isLetter(ch)) {
+			int start = pos;
+			while(pos < text.length() && Character.isLetterOrDigit(text.charAt(pos))) {
+				pos++;
+			}
+			String name = text.substring(start, pos).toLowerCase();
+			switch(name) {
+			case "z":
+				return intern(Op.Z, null, null, 0, 0);
+			case "c":
+				return intern(Op.C, null, null, 0, 0);
+			case "i":
+				return number(0, 1);
+			case "pi":
+				return number(Math.PI, 0);
+			case "e":
+				return number(Math.E, 0);
+			}
+			Op op;
+			switch(name) {
+			case "ln":
+				op = Op.LOG;
+				break;
+			case "exp":
+			case "log":
+			case "sqrt":
+			case "sin":
+			case "cos":
+			case "sinh":
+			case "cosh":
+			case "conj":
+			case "abs":
+			case "norm":
+			case "re":
+			case "im":
+			case "arg":
+				op = Op.valueOf(name.toUpperCase());
+				break;
+			default:
+				pos = start;
+				throw error("Unknown name '" + name + "'");
+			}
+			expect("(");
+			Node node = parseExpression();
+			expect(")");
+			return make(op, node, null);
+		}
+		throw error("Unexpected '" + ch + "'");
+	}
+
+	private Node parseNumber() throws InvalidFractalException {
+		int start = pos;
+		while(pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.')) {
+			pos++;
+		}
+		//an exponent, only if digits follow, so 2e is still 2 * e
+		if(pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E')) {
+			int end = pos + 1;
+			if(end < text.length() && (text.charAt(end) == '+' || text.charAt(end) == '-')) {
+				end++;
+			}
+			if(end < text.length() && Character.isDigit(text.charAt(end))) {
+				pos = end;
+				while(pos < text.length() && Character.isDigit(text.charAt(pos))) {
+					pos++;
+				}
+			}
+		}
+		try {
+			return number(Double.parseDouble(text.substring(start, pos)), 0);
+		} catch(NumberFormatException e) {
+			pos = start;
+			throw error("Invalid number");
+		}
+	}
+
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,378 @@
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles Formulas into a DoubleKernel: the formulas are written out as
+ * straight-line Java source on local doubles, one statement per node, and
+ * compiled in memory with the system Java compiler into a hidden class.
+ * The generated iterate holds the whole loop, bailout and function inline,
+ * so the JIT compiles it like a hand-written kernel, without any virtual
+ * call or allocation per iteration.
+ * Needs a JDK; on a bare JRE there is no compiler and compile throws.
+ * @author Blake
+ */
+class FormulaCompiler {
+
+	private static final String CLASS_NAME = "GeneratedFormulaKernel";
+
+	private final StringBuilder source = new StringBuilder();
+	/**
+	 * The local variables holding the real and imaginary parts of the nodes
+	 * computed so far in the current method.
+	 */
+	private final Map<Formula.Node, String[]> locals = new IdentityHashMap<>();
+	private int count;
+	private String indent;
+
+	/**
+	 * Generates and compiles a kernel which starts z at start, stops when
+	 * bailout holds and replaces z with function until then.
+	 * @param function - The expression z is replaced with on each iteration.
+	 * @param bailout - The condition which ends the iteration.
+	 * @param start - The expression z starts at.
+	 * @return The constructor of the kernel class, which takes no arguments.
+	 * @throws ReflectiveOperationException If the source could not be compiled
+	 * or loaded, with the compiler's messages.
+	 */
+	static MethodHandle compile(Formula function, Formula bailout, Formula start)
+			throws ReflectiveOperationException {
+		String source = new FormulaCompiler().generate(function, bailout, start);
+		byte[] bytes = compile(source);
+		MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+		return lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+	}
+
+	/**
+	 * Returns the Java source of the kernel class.
+	 */
+	String generate(Formula function, Formula bailout, Formula start) {
+		source.append("public final class ").append(CLASS_NAME).append(" extends DoubleKernel {\n");
+
+		//start formulas see z as 0, like FormulaFractal.start
+		method("public void start(double[] z, double x, double y)");
+		line("final double zr = 0;");
+		line("final double zi = 0;");
+		String[] z0 = emit(start.getRoot());
+		line("z[0] = " + z0[0] + ";");
+		line("z[1] = " + z0[1] + ";");
+		end();
+
+		method("public void func(double[] z, double x, double y)");
+		line("final double zr = z[0];");
+		line("final double zi = z[1];");
+		String[] next = emit(function.getRoot());
+		line("z[0] = " + next[0] + ";");
+		line("z[1] = " + next[1] + ";");
+		end();
+
+		method("public boolean bailout(double[] z, double x, double y)");
+		line("final double zr = z[0];");
+		line("final double zi = z[1];");
+		line("return " + condition(bailout.getRoot()) + ";");
+		end();
+
+		//the same loop as DoubleKernel.iterate and iteratePeriodic, on locals
+		method("public int iterate(double x, double y, int maxIterations, double[] z)");
+		line("start(z, x, y);");
+		line("double zr = z[0];");
+		line("double zi = z[1];");
+		line("final double tolerance = periodicityTolerance;");
+		line("double snapReal = zr;");
+		line("double snapImag = zi;");
+		line("int steps = 0;");
+		line("int limit = 1;");
+		line("for(int n=0;n<maxIterations;n++) {");
+		indent += "\t";
+		//each pass computes its nodes afresh, since z changes
+		locals.clear();
+		line("if(" + condition(bailout.getRoot()) + ") {");
+		line("\tz[0] = zr;");
+		line("\tz[1] = zi;");
+		line("\treturn n;");
+		line("}");
+		next = emit(function.getRoot());
+		line("final double nextReal = " + next[0] + ";");
+		line("zi = " + next[1] + ";");
+		line("zr = nextReal;");
+		line("if(tolerance > 0) {");
+		line("\tif(Math.abs(zr - snapReal) < tolerance && Math.abs(zi - snapImag) < tolerance) {");
+		line("\t\tbreak;");
+		line("\t}");
+		line("\tif(++steps == limit) {");
+		line("\t\tsnapReal = zr;");
+		line("\t\tsnapImag = zi;");
+		line("\t\tsteps = 0;");
+		line("\t\tlimit <<= 1;");
+		line("\t}");
+		line("}");
+		indent = indent.substring(1);
+		line("}");
+		line("z[0] = zr;");
+		line("z[1] = zi;");
+		line("return -1;");
+		end();
+
+		source.append("}\n");
+		return source.toString();
+	}
+
+	private void method(String signature) {
+		locals.clear();
+		source.append("\t@Override\n\t").append(signature).append(" {\n");
+		indent = "\t\t";
+	}
+
+	private void end() {
+		source.append("\t}\n");
+	}
+
+	private void line(String line) {
+		source.append(indent).append(line).append('\n');
+	}
+
+	/**
+	 * Writes out the statements for a condition's operands and returns the
+	 * condition as a Java boolean expression.
+	 */
+	private String condition(Formula.Node node) {
+		switch(node.op) {
+		case AND:
+			return "(" + condition(node.a) + " && " + condition(node.b) + ")";
+		case OR:
+			return "(" + condition(node.a) + " || " + condition(node.b) + ")";
+		default:
+			String a = emit(node.a)[0];
+			String b = emit(node.b)[0];
+			switch(node.op) {
+			case LESS:
+				return "(" + a + " < " + b + ")";
+			case LESS_EQUAL:
+				return "(" + a + " <= " + b + ")";
+			case GREATER:
+				return "(" + a + " > " + b + ")";
+			default:
+				return "(" + a + " >= " + b + ")";
+			}
+		}
+	}
+
+	/**
+	 * Writes out the statements which compute a node, unless it was already
+	 * computed, and returns the Java expressions of its real and imaginary
+	 * parts. Follows Formula.apply exactly.
+	 */
+	private String[] emit(Formula.Node node) {
+		String[] value = locals.get(node);
+		if(value != null) {
+			return value;
+		}
+		switch(node.op) {
+		case NUMBER:
+			return new String[] {literal(node.real), literal(node.imag)};
+		case Z:
+			return new String[] {"zr", "zi"};
+		case C:
+			return new String[] {"x", "y"};
+		default:
+			break;
+		}
+		boolean aReal = node.a.isReal;
+		boolean bReal = node.b != null && node.b.isReal;
+		String[] av = emit(node.a);
+		String[] bv = node.b == null ? null : emit(node.b);
+		String ar = av[0];
+		String ai = aReal ? "0.0" : av[1];
+		String br = bv == null ? "0.0" : bv[0];
+		String bi = bv == null || bReal ? "0.0" : bv[1];
+		String re;
+		String im;
+		int n = count++;
+		switch(node.op) {
+		case NEG:
+			re = "-" + ar;
+			im = "-" + ai;
+			break;
+		case ADD:
+			re = ar + " + " + br;
+			im = aReal ? bi : bReal ? ai : ai + " + " + bi;
+			break;
+		case SUB:
+			re = ar + " - " + br;
+			im = aReal ? "-" + bi : bReal ? ai : ai + " - " + bi;
+			break;
+		case MUL:
+			if(aReal || bReal) {
+				re = ar + " * " + br;
+				im = aReal ? ar + " * " + bi : ai + " * " + br;
+			} else {
+				re = ar + " * " + br + " - " + ai + " * " + bi;
+				im = ar + " * " + bi + " + " + ai + " * " + br;
+			}
+			break;
+		case DIV:
+			if(bReal) {
+				re = ar + " / " + br;
+				im = ai + " / " + br;
+			} else {
+				line("final double d" + n + " = " + br + " * " + br + " + " + bi + " * " + bi + ";");
+				re = "(" + ar + " * " + br + " + " + ai + " * " + bi + ") / d" + n;
+				im = "(" + ai + " * " + br + " - " + ar + " * " + bi + ") / d" + n;
+			}
+			break;
+		case SQUARE:
+			re = ar + " * " + ar + " - " + ai + " * " + ai;
+			im = "2 * " + ar + " * " + ai;
+			break;
+		case POW:
+			line("final double n" + n + " = " + ar + " * " + ar + " + " + ai + " * " + ai + ";");
+			line("final double lr" + n + " = 0.5 * Math.log(n" + n + ");");
+			line("final double la" + n + " = Math.atan2(" + ai + ", " + ar + ");");
+			line("final double mr" + n + " = " + br + " * lr" + n + " - " + bi + " * la" + n + ";");
+			line("final double mi" + n + " = " + br + " * la" + n + " + " + bi + " * lr" + n + ";");
+			line("final double e" + n + " = Math.exp(mr" + n + ");");
+			re = "n" + n + " == 0 ? (" + br + " == 0 && " + bi + " == 0 ? 1 : 0) : e" + n + " * Math.cos(mi" + n + ")";
+			im = "n" + n + " == 0 ? 0 : e" + n + " * Math.sin(mi" + n + ")";
+			break;
+		case EXP:
+			line("final double e" + n + " = Math.exp(" + ar + ");");
+			re = "e" + n + " * Math.cos(" + ai + ")";
+			im = "e" + n + " * Math.sin(" + ai + ")";
+			break;
+		case LOG:
+			re = "0.5 * Math.log(" + ar + " * " + ar + " + " + ai + " * " + ai + ")";
+			im = "Math.atan2(" + ai + ", " + ar + ")";
+			break;
+		case SQRT:
+			line("final double r" + n + " = Math.sqrt(" + ar + " * " + ar + " + " + ai + " * " + ai + ");");
+			re = "Math.sqrt((r" + n + " + " + ar + ") * 0.5)";
+			im = "Math.copySign(Math.sqrt((r" + n + " - " + ar + ") * 0.5), " + ai + ")";
+			break;
+		case SIN:
+			re = "Math.sin(" + ar + ") * Math.cosh(" + ai + ")";
+			im = "Math.cos(" + ar + ") * Math.sinh(" + ai + ")";
+			break;
+		case COS:
+			re = "Math.cos(" + ar + ") * Math.cosh(" + ai + ")";
+			im = "-(Math.sin(" + ar + ") * Math.sinh(" + ai + "))";
+			break;
+		case SINH:
+			re = "Math.sinh(" + ar + ") * Math.cos(" + ai + ")";
+			im = "Math.cosh(" + ar + ") * Math.sin(" + ai + ")";
+			break;
+		case COSH:
+			re = "Math.cosh(" + ar + ") * Math.cos(" + ai + ")";
+			im = "Math.sinh(" + ar + ") * Math.sin(" + ai + ")";
+			break;
+		case CONJ:
+			re = ar;
+			im = "-" + ai;
+			break;
+		case ABS:
+			re = aReal ? "Math.abs(" + ar + ")" : "Math.sqrt(" + ar + " * " + ar + " + " + ai + " * " + ai + ")";
+			im = "0.0";
+			break;
+		case NORM:
+			re = ar + " * " + ar + " + " + ai + " * " + ai;
+			im = "0.0";
+			break;
+		case RE:
+			re = ar;
+			im = "0.0";
+			break;
+		case IM:
+			re = ai;
+			im = "0.0";
+			break;
+		case ARG:
+			re = "Math.atan2(" + ai + ", " + ar + ")";
+			im = "0.0";
+			break;
+		default:
+			throw new IllegalArgumentException("Not a value: " + node.op);
+		}
+		line("final double re" + n + " = " + re + ";");
+		if(node.isReal) {
+			value = new String[] {"re" + n, "0.0"};
+		} else {
+			line("final double im" + n + " = " + im + ";");
+			value = new String[] {"re" + n, "im" + n};
+		}
+		locals.put(node, value);
+		return value;
+	}
+
+	/**
+	 * Returns a Java expression for a double which reads back as exactly
+	 * the same double.
+	 */
+	private static String literal(double value) {
+		if(Double.isNaN(value)) {
+			return "Double.NaN";
+		}
+		if(Double.isInfinite(value)) {
+			return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+		}
+		return "(" + value + ")";
+	}
+
+	/**
+	 * Compiles the source of a single class in memory.
+	 */
+	private static byte[] compile(String source) throws ReflectiveOperationException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if(compiler == null) {
+			throw new ClassNotFoundException("No Java compiler, a JDK is needed to compile formulas");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream messages = new ByteArrayOutputStream();
+		StandardJavaFileManager standard = compiler.getStandardFileManager(null, null, null);
+		JavaFileManager files = new ForwardingJavaFileManager<JavaFileManager>(standard) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(
+					Location location,
+					String className,
+					JavaFileObject.Kind kind,
+					FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("bytes:///" + className + ".class"), kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						return bytes;
+					}
+				};
+			}
+		};
+		JavaFileObject file = new SimpleJavaFileObject(
+				URI.create("string:///" + CLASS_NAME + ".java"), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		List<String> options = List.of(
+				"-classpath", System.getProperty("java.class.path"),
+				"-proc:none", "-g:none", "-Xlint:none");
+		boolean compiled = compiler.getTask(
+				new PrintWriter(messages, true), files, null, options, null, List.of(file)).call();
+		if(!compiled) {
+			throw new ClassNotFoundException("Could not compile formula: " + messages + "\n" + source);
+		}
+		return bytes.toByteArray();
+	}
+}
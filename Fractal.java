@@ -1,3 +1,5 @@
+import java.lang.invoke.MethodHandle;
+import java.math.BigDecimal;
 import java.util.function.Predicate;
 
 /**
@@ -30,6 +32,75 @@ public abstract class Fractal <T extends CNumber> {
 	
 	public abstract boolean bailout(T z, double x, double y);
 	
+	/**
+	 * Returns the starting value of z for a pixel. Defaults to z0.
+	 * @param x - The adjusted x coordinate of the pixel.
+	 * @param y - The adjusted y coordinate of the pixel.
+	 * @return The value z starts at.
+	 */
+	public T start(double x, double y) {
+		return z0;
+	}
+	
+	/**
+	 * Returns an allocation free DoubleKernel which computes the same thing
+	 * as this Fractal, or null if there is none. Renderers use the kernel
+	 * instead of iterate whenever one exists.
+	 * @return A new kernel, or null.
+	 */
+	public DoubleKernel getKernel() {
+		return null;
+	}
+	
+	/**
+	 * Returns a VectorKernel which computes the same thing as getKernel,
+	 * several pixels at a time, or null if there is none or the Vector API
+	 * is not available.
+	 * @return A new kernel, or null.
+	 */
+	public VectorKernel getVectorKernel() {
+		return null;
+	}
+	
+	/**
+	 * Returns a DoubleDoubleKernel which computes the same thing as this
+	 * Fractal in double-double precision, or null if there is none.
+	 * Renderers use it for views too deep for doubles.
+	 * @return A new kernel, or null.
+	 */
+	public DoubleDoubleKernel getDoubleDoubleKernel() {
+		return null;
+	}
+	
+	/**
+	 * Returns the points the orbits of this Fractal converge to, or null if
+	 * its orbits escape instead. Renderers store the index of the root each
+	 * pixel reached in Frame.escapes, for coloring by basin.
+	 * @return The roots, or null.
+	 */
+	public CDouble[] getRoots() {
+		return null;
+	}
+	
+	/**
+	 * Returns a Perturbation which renders this Fractal around a center
+	 * given in more precision than a double holds, or null if this Fractal
+	 * cannot be rendered by perturbation. Renderers use it once pixels are
+	 * too close together for doubles.
+	 * @param centerX - The x coordinate of the center.
+	 * @param centerY - The y coordinate of the center.
+	 * @param pixelSize - The distance between neighboring pixels.
+	 * @param maxIterations - The maximum number of iterations per pixel.
+	 * @return A new Perturbation, or null.
+	 */
+	public Perturbation getPerturbation(
+			BigDecimal centerX,
+			BigDecimal centerY,
+			double pixelSize,
+			int maxIterations) {
+		return null;
+	}
+	
 	public final T getZ0() {
 		return z0;
 	}
@@ -39,7 +110,7 @@ public abstract class Fractal <T extends CNumber> {
 	}
 	
 	/**
-	 * Initializes z and c according to the return of startup.apply(x, y).
+	 * Initializes z according to the return of start(x, y).
 	 * Iterates through the function z = func.apply(z, c) until the bailout
 	 * condition bailout.test(z) returns a true.
 	 * @param x - The adjusted x coordinate of the pixel.
@@ -51,27 +122,159 @@ public abstract class Fractal <T extends CNumber> {
 	 * condition was triggered.
 	 */
 	public final int iterate(double x, double y, int maxIterations) {
-		T z = z0;
+		return iterate(x, y, maxIterations, 0);
+	}
+	
+	/**
+	 * Like iterate, but also stops early with a -1 once the orbit of z is
+	 * caught in a cycle. Uses Brent's method: z is compared against a snapshot
+	 * which is retaken each time the number of steps since the last snapshot
+	 * reaches the next power of 2.
+	 * @param x - The adjusted x coordinate of the pixel.
+	 * @param y - The adjusted y coordinate of the pixel.
+	 * @param maxIterations - The maximum number of iterations before
+	 * the method returns a -1.
+	 * @param tolerance - How close z has to come back to the snapshot to
+	 * count as a cycle. 0 disables the check.
+	 * @return The same as iterate(x, y, maxIterations).
+	 */
+	public final int iterate(double x, double y, int maxIterations, double tolerance) {
+		T z = start(x, y);
+		double snapReal = z.getReal().doubleValue();
+		double snapImag = z.getImag().doubleValue();
+		int steps = 0;
+		int limit = 1;
 		for(int i=0;i<maxIterations;i++) {
 			if(bailout(z, x, y)) {
 				return i;
 			}
 			z = func(z, x, y);
+			if(tolerance > 0) {
+				double real = z.getReal().doubleValue();
+				double imag = z.getImag().doubleValue();
+				if(Math.abs(real - snapReal) < tolerance && Math.abs(imag - snapImag) < tolerance) {
+					return -1;
+				}
+				if(++steps == limit) {
+					snapReal = real;
+					snapImag = imag;
+					steps = 0;
+					limit <<= 1;
+				}
+			}
 		}
 		return -1;
 	}
+	
+	/**
+	 * Returns true if an orbit which returns to an earlier value of z can be
+	 * reported as never bailing out. Fractals whose bailout is triggered by
+	 * converging, rather than escaping, must return false.
+	 * @return Whether renderers may use periodicity checking on this Fractal.
+	 */
+	public boolean isPeriodicitySafe() {
+		return true;
+	}
+	
+	/**
+	 * Creates a Fractal from a description such as those returned by toString.
+	 * The name is case insensitive and parameters follow a colon, separated by commas:
+	 * mandelbrot, integerbrot:3, multibrot:2.5 or multibrot:2.5,0.1,
+	 * julia:-0.8,0.156, polynomial:c0,c1,..., newton:c0,c1,... and
+	 * formula:function;bailout;start, where the bailout and start may be
+	 * left out or empty (see FormulaFractal). The coefficients of
+	 * polynomials may be complex, written like 1.5-2.0i (see
+	 * CPolynomial.parseCoefficient).
+	 * @param spec - The description of the fractal.
+	 * @return A new Fractal.
+	 * @throws InvalidFractalException If the description cannot be understood.
+	 */
+	public static Fractal<CDouble> parse(String spec) throws InvalidFractalException {
+		int colon = spec.indexOf(':');
+		String name = (colon == -1 ? spec : spec.substring(0, colon)).trim().toLowerCase();
+		if(name.equals("formula") && colon != -1) {
+			String[] parts = spec.substring(colon + 1).split(";", -1);
+			if(parts.length > 3) {
+				throw new InvalidFractalException("Wrong number of parts for formula: " + spec);
+			}
+			return new FormulaFractal(parts[0],
+					formulaPart(parts, 1, FormulaFractal.DEFAULT_BAILOUT),
+					formulaPart(parts, 2, FormulaFractal.DEFAULT_START));
+		}
+		double[] params;
+		CDouble[] coefficients;
+		boolean complex = false;
+		try {
+			String[] parts = colon == -1 ? new String[0] : spec.substring(colon + 1).split(",");
+			params = new double[parts.length];
+			coefficients = new CDouble[parts.length];
+			for(int i=0;i<parts.length;i++) {
+				coefficients[i] = CPolynomial.parseCoefficient(parts[i]);
+				params[i] = coefficients[i].getReal();
+				complex |= coefficients[i].getImag() != 0;
+			}
+		} catch(NumberFormatException e) {
+			throw new InvalidFractalException("Invalid parameters in " + spec);
+		}
+		if(complex && !name.equals("polynomial") && !name.equals("newton")) {
+			throw new InvalidFractalException("Only polynomial coefficients may be complex: " + spec);
+		}
+		switch(name) {
+		case "mandelbrot":
+			if(params.length == 0) {
+				return new Mandelbrot();
+			}
+			break;
+		case "integerbrot":
+			if(params.length == 1 && params[0] == (int) params[0]) {
+				return new Integerbrot((int) params[0]);
+			}
+			break;
+		case "multibrot":
+			if(params.length == 1 || params.length == 2) {
+				return new Multibrot(new CDouble(params[0], params.length == 2 ? params[1] : 0));
+			}
+			break;
+		case "julia":
+			if(params.length == 2) {
+				return new Julia(params[0], params[1]);
+			}
+			break;
+		case "polynomial":
+			if(params.length > 1) {
+				return new PolynomialFractal(new CPolynomial(coefficients));
+			}
+			break;
+		case "newton":
+			if(params.length > 1) {
+				return new Newton(new CPolynomial(coefficients));
+			}
+			break;
+		default:
+			throw new InvalidFractalException("Unknown fractal: " + name);
+		}
+		throw new InvalidFractalException("Wrong number of parameters for " + name + ": " + spec);
+	}
+	
+	/**
+	 * Returns part i of a formula's spec, or the default if it is missing or blank.
+	 */
+	private static String formulaPart(String[] parts, int i, String defaultValue) {
+		return i < parts.length && !parts[i].isBlank() ? parts[i] : defaultValue;
+	}
 }
 
-//TODO fix pow? generalization not working
 class Multibrot extends Fractal<CDouble> {
 	
 	private CDouble exponent;
 	private double bailoutValue;
+	private double bailoutSquared;
 	
 	public Multibrot(CDouble exponent) {
 		super(new CDouble(0, 0));
 		this.exponent = exponent;
 		bailoutValue = exponent.abs();
+		bailoutSquared = bailoutValue * bailoutValue;
 	}
 	
 	@Override
@@ -81,7 +284,35 @@ class Multibrot extends Fractal<CDouble> {
 	
 	@Override
 	public boolean bailout(CDouble z, double x, double y) {
-		return z.abs() >= bailoutValue;
+		return z.norm() >= bailoutSquared;
+	}
+	
+	/**
+	 * Integral exponents use the repeated squaring of IntegerbrotKernel,
+	 * the same as CDouble.pow does for them.
+	 */
+	@Override
+	public DoubleKernel getKernel() {
+		double real = exponent.getReal();
+		if(exponent.getImag() == 0 && real == (int) real) {
+			return new IntegerbrotKernel(getZ0(), (int) real, bailoutValue);
+		}
+		return new MultibrotKernel(getZ0(), exponent, bailoutValue);
+	}
+	
+	public double getBailoutValue() {
+		return bailoutValue;
+	}
+	
+	public CDouble getExponent() {
+		return exponent;
+	}
+	
+	/**
+	 * Represents this Multibrot in the format Fractal.parse accepts.
+	 */
+	public String toString() {
+		return "multibrot:" + exponent.getReal() + "," + exponent.getImag();
 	}
 }
 
@@ -98,6 +329,31 @@ class Integerbrot extends Multibrot {
 	public CDouble func(CDouble z, double x, double y) {
 		return z.pow(exponent).add(new CDouble(x, y));
 	}
+	
+	@Override
+	public DoubleKernel getKernel() {
+		return new IntegerbrotKernel(getZ0(), exponent, getBailoutValue());
+	}
+	
+	/**
+	 * Perturbation works for positive exponents from 2 up.
+	 */
+	@Override
+	public Perturbation getPerturbation(
+			BigDecimal centerX,
+			BigDecimal centerY,
+			double pixelSize,
+			int maxIterations) {
+		if(exponent < 2) {
+			return null;
+		}
+		return new Perturbation(getZ0(), exponent, getBailoutValue(),
+				centerX, centerY, pixelSize, maxIterations);
+	}
+	
+	public String toString() {
+		return "integerbrot:" + exponent;
+	}
 }
 
 class Mandelbrot extends Integerbrot {
@@ -105,6 +361,37 @@ class Mandelbrot extends Integerbrot {
 	public Mandelbrot() {
 		super(2);
 	}
+	
+	/**
+	 * Uses the dedicated quadratic kernel, which relies on z0 being 0.
+	 */
+	@Override
+	public DoubleKernel getKernel() {
+		if(!getZ0().isZero()) {
+			return super.getKernel();
+		}
+		return new MandelbrotKernel(getBailoutValue());
+	}
+	
+	@Override
+	public VectorKernel getVectorKernel() {
+		if(!getZ0().isZero()) {
+			return null;
+		}
+		return VectorKernel.load("MandelbrotVectorKernel", getBailoutValue());
+	}
+	
+	@Override
+	public DoubleDoubleKernel getDoubleDoubleKernel() {
+		if(!getZ0().isZero()) {
+			return null;
+		}
+		return new MandelbrotDoubleDoubleKernel(getBailoutValue());
+	}
+	
+	public String toString() {
+		return "mandelbrot";
+	}
 }
 
 /**
@@ -125,6 +412,14 @@ class Julia extends Fractal<CDouble> {
 		c = new CDouble(real, imag);
 	}
 	
+	/**
+	 * Julia sets start z at the pixel itself.
+	 */
+	@Override
+	public CDouble start(double x, double y) {
+		return new CDouble(x, y);
+	}
+	
 	@Override
 	public CDouble func(CDouble z, double x, double y) {
 		return z.mul(z).add(c);
@@ -132,33 +427,161 @@ class Julia extends Fractal<CDouble> {
 	
 	@Override
 	public boolean bailout(CDouble z, double x, double y) {
-		Runner.log(z.abs());
-		return z.abs() >= 2;
+		if(Log.TRACE) {
+			Log.trace("|z| = %s", z.abs());
+		}
+		return z.norm() >= 4;
+	}
+	
+	@Override
+	public DoubleKernel getKernel() {
+		return new JuliaKernel(c);
+	}
+	
+	@Override
+	public VectorKernel getVectorKernel() {
+		return VectorKernel.load("JuliaVectorKernel", c.getReal(), c.getImag());
+	}
+	
+	@Override
+	public DoubleDoubleKernel getDoubleDoubleKernel() {
+		return new JuliaDoubleDoubleKernel(c);
+	}
+	
+	public String toString() {
+		return "julia:" + c.getReal() + "," + c.getImag();
 	}
 }
 
+/**
+ * Newton's method on a polynomial, z = z - p(z) / p'(z), starting from each
+ * pixel. The roots are found once up front, and a pixel bails out as soon
+ * as z is within the tolerance of one of them.
+ * @author Blake
+ */
 class Newton extends PolynomialFractal {
 	
-	private CPolynomial derivative;
+	/**
+	 * How close z has to come to a simple root to count as converged.
+	 * A root of multiplicity m uses ROOT_TOLERANCE ^ (1 / m), since doubles
+	 * only pin it down to about that many digits, and Newton's method
+	 * approaches it linearly instead of quadratically.
+	 */
+	public static final double ROOT_TOLERANCE = 1e-6;
+	/**
+	 * Roots found closer together than this are one repeated root.
+	 */
+	public static final double ROOT_MERGE_DISTANCE = 1e-3;
+	
+	private final CDouble[] roots;
+	private final double[] tolerances;
 	
 	public Newton(CPolynomial polynomial) {
 		super(polynomial);
-		this.derivative = polynomial.derive();
+		//a root of multiplicity m comes out of CPolynomial.roots as a cluster of m
+		CDouble[] found = polynomial.roots();
+		int[] group = new int[found.length];
+		int groups = 0;
+		for(int i=0;i<found.length;i++) {
+			group[i] = -1;
+			for(int j=0;j<i&&group[i]==-1;j++) {
+				if(Math.hypot(found[i].getReal() - found[j].getReal(),
+						found[i].getImag() - found[j].getImag()) < ROOT_MERGE_DISTANCE) {
+					group[i] = group[j];
+				}
+			}
+			if(group[i] == -1) {
+				group[i] = groups++;
+			}
+		}
+		roots = new CDouble[groups];
+		tolerances = new double[groups];
+		for(int g=0;g<groups;g++) {
+			double real = 0;
+			double imag = 0;
+			int multiplicity = 0;
+			for(int i=0;i<found.length;i++) {
+				if(group[i] == g) {
+					real += found[i].getReal();
+					imag += found[i].getImag();
+					multiplicity++;
+				}
+			}
+			roots[g] = new CDouble(real / multiplicity, imag / multiplicity);
+			tolerances[g] = Math.pow(ROOT_TOLERANCE, 1.0 / multiplicity);
+		}
+	}
+	
+	@Override
+	public CDouble start(double x, double y) {
+		return new CDouble(x, y);
 	}
 	
 	@Override
 	public CDouble func(CDouble z, double x, double y) {
-		return super.func(z, x, y).div(derivative.sum(z)).add(z);
+		double[] p = new double[4];
+		getPolynomial().sumWithDerivative(z.getReal(), z.getImag(), p, 0);
+		CDouble q = new CDouble(p[0], p[1]).div(new CDouble(p[2], p[3]));
+		return new CDouble(z.getReal() - q.getReal(), z.getImag() - q.getImag());
+	}
+	
+	@Override
+	public boolean bailout(CDouble z, double x, double y) {
+		return getRootIndex(z) != -1;
+	}
+	
+	/**
+	 * Returns the index in getRoots of the root within the tolerance of z.
+	 * @param z - The value to look up.
+	 * @return The index of the root, or -1 if z is not near any.
+	 */
+	public int getRootIndex(CDouble z) {
+		for(int i=0;i<roots.length;i++) {
+			double dr = z.getReal() - roots[i].getReal();
+			double di = z.getImag() - roots[i].getImag();
+			if(dr * dr + di * di < tolerances[i] * tolerances[i]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the distinct roots, repeated roots only once.
+	 */
+	@Override
+	public CDouble[] getRoots() {
+		return roots.clone();
+	}
+	
+	/**
+	 * Newton's method settles on the roots, so periodicity checking would
+	 * report converging pixels as interior.
+	 */
+	@Override
+	public boolean isPeriodicitySafe() {
+		return false;
+	}
+	
+	@Override
+	public DoubleKernel getKernel() {
+		return new NewtonKernel(getPolynomial(), roots, tolerances);
+	}
+	
+	public String toString() {
+		return "newton:" + getPolynomial().toString();
 	}
 }
 
 class PolynomialFractal extends Fractal<CDouble> {
 	
 	private CPolynomial polynomial;
+	private double bailoutSquared;
 	
 	public PolynomialFractal(CPolynomial polynomial) {
 		super(new CDouble(0, 0));
 		this.polynomial = polynomial;
+		bailoutSquared = (double) polynomial.degree() * polynomial.degree();
 	}
 	
 	public CDouble func(CDouble z, double x, double y) {
@@ -166,7 +589,117 @@ class PolynomialFractal extends Fractal<CDouble> {
 	}
 	
 	public boolean bailout(CDouble z, double x, double y) {
-		return z.abs() >= polynomial.degree();
+		return z.norm() >= bailoutSquared;
+	}
+	
+	@Override
+	public DoubleKernel getKernel() {
+		return new PolynomialKernel(getZ0(), polynomial);
+	}
+	
+	public CPolynomial getPolynomial() {
+		return polynomial;
+	}
+	
+	public String toString() {
+		return "polynomial:" + polynomial.toString();
+	}
+}
+
+/**
+ * A fractal given by formulas in z and c, such as z^3 + c*z - 1, which are
+ * parsed at runtime (see Formula) and compiled into a DoubleKernel (see
+ * FormulaCompiler), so they render as fast as a hand-written kernel.
+ * Without a Java compiler, getKernel returns null and renderers fall back
+ * to func and bailout, which interpret the formulas.
+ * @author Blake
+ */
+class FormulaFractal extends Fractal<CDouble> {
+	
+	public static final String DEFAULT_BAILOUT = "|z| >= 2";
+	public static final String DEFAULT_START = "0";
+	
+	private final Formula function;
+	private final Formula bailout;
+	private final Formula start;
+	private MethodHandle kernelConstructor;
+	private String compileError;
+	private boolean compiled;
+	
+	/**
+	 * Constructor for this FormulaFractal.
+	 * @param function - The expression z is replaced with on each iteration.
+	 * @param bailout - The condition which ends the iteration.
+	 * @param start - The expression z starts at.
+	 * @throws InvalidFractalException If any of them cannot be parsed.
+	 */
+	public FormulaFractal(String function, String bailout, String start) throws InvalidFractalException {
+		super(new CDouble(0, 0));
+		this.function = Formula.expression(function);
+		this.bailout = Formula.condition(bailout);
+		this.start = Formula.expression(start);
+	}
+	
+	@Override
+	public CDouble start(double x, double y) {
+		double[] z = start.evaluate(0, 0, x, y);
+		return new CDouble(z[0], z[1]);
+	}
+	
+	@Override
+	public CDouble func(CDouble z, double x, double y) {
+		double[] next = function.evaluate(z.getReal(), z.getImag(), x, y);
+		return new CDouble(next[0], next[1]);
+	}
+	
+	@Override
+	public boolean bailout(CDouble z, double x, double y) {
+		return bailout.test(z.getReal(), z.getImag(), x, y);
+	}
+	
+	/**
+	 * Only a bailout which tests for escaping is safe: a converging orbit
+	 * would be caught as periodic before it met a condition like |z - 1| < 1e-6.
+	 */
+	@Override
+	public boolean isPeriodicitySafe() {
+		return bailout.isEscapeCondition();
+	}
+	
+	/**
+	 * Compiles the formulas on the first call, and returns a new instance
+	 * of the compiled kernel, or null if they could not be compiled.
+	 */
+	@Override
+	public synchronized DoubleKernel getKernel() {
+		if(!compiled) {
+			compiled = true;
+			try {
+				kernelConstructor = FormulaCompiler.compile(function, bailout, start);
+			} catch(ReflectiveOperationException | LinkageError e) {
+				compileError = e.getMessage();
+			}
+		}
+		if(kernelConstructor == null) {
+			return null;
+		}
+		try {
+			return (DoubleKernel) kernelConstructor.invoke();
+		} catch(Throwable e) {
+			throw new IllegalStateException("Could not create the formula kernel", e);
+		}
+	}
+	
+	/**
+	 * Returns why the formulas could not be compiled, or null if they were
+	 * or getKernel was not called yet.
+	 */
+	public synchronized String getCompileError() {
+		return compileError;
+	}
+	
+	public String toString() {
+		return "formula:" + function + ";" + bailout + ";" + start;
 	}
 }
 
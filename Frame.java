@@ -0,0 +1,107 @@
+import java.util.Arrays;
+
+/**
+ * The raw result of a render: the iterations and escape value of every pixel,
+ * row by row. Kept apart from the colors so a Frame can be colored again
+ * with another Gradient without iterating a single pixel.
+ * @author Blake
+ */
+public class Frame {
+
+	public final int width;
+	public final int height;
+	/**
+	 * The value fractal.iterate returned for each pixel.
+	 * -1 for pixels which never bailed out.
+	 */
+	public final int[] iterations;
+	/**
+	 * |z| at the moment each pixel bailed out, or for fractals with roots,
+	 * the index of the root it converged to. NaN where it is unknown:
+	 * pixels which never bailed out, fractals without a DoubleKernel
+	 * and pixels filled in without iterating.
+	 */
+	public final float[] escapes;
+
+	/**
+	 * Constructor for this Frame.
+	 * @param width - The width of the image in pixels.
+	 * @param height - The height of the image in pixels.
+	 */
+	public Frame(int width, int height) {
+		this.width = width;
+		this.height = height;
+		iterations = new int[width * height];
+		escapes = new float[width * height];
+		Arrays.fill(escapes, Float.NaN);
+	}
+
+	/**
+	 * Maps the iterations of part of this Frame through the gradient into
+	 * an array of packed RGB ints the size of the frame.
+	 * Pixels which never bailed out are black.
+	 * @param gradient - The gradient to color with.
+	 * @param pixels - The output, row by row.
+	 * @param x0 - The left edge of the part to color.
+	 * @param y0 - The top edge of the part to color.
+	 * @param w - The width of the part to color.
+	 * @param h - The height of the part to color.
+	 */
+	public void color(Gradient gradient, int[] pixels, int x0, int y0, int w, int h) {
+		for(int y=y0;y<y0+h;y++) {
+			int row = y * width;
+			for(int x=row+x0;x<row+x0+w;x++) {
+				int i = iterations[x];
+				pixels[x] = i == -1 ? 0 : gradient.get(i);
+			}
+		}
+	}
+
+	/**
+	 * Colors part of this Frame by basin of attraction, for fractals whose
+	 * escapes hold root indices: each root gets its own equal band of the
+	 * gradient, and the iterations pick the color within the band.
+	 * Pixels which never converged are black.
+	 * @param gradient - The gradient to color with.
+	 * @param roots - The number of roots.
+	 * @param pixels - The output, row by row.
+	 * @param x0 - The left edge of the part to color.
+	 * @param y0 - The top edge of the part to color.
+	 * @param w - The width of the part to color.
+	 * @param h - The height of the part to color.
+	 */
+	public void colorBasins(Gradient gradient, int roots, int[] pixels, int x0, int y0, int w, int h) {
+		int band = Math.max(1, gradient.getSize() / roots);
+		for(int y=y0;y<y0+h;y++) {
+			int row = y * width;
+			for(int x=row+x0;x<row+x0+w;x++) {
+				int i = iterations[x];
+				float root = escapes[x];
+				pixels[x] = i == -1 || Float.isNaN(root) ? 0 : gradient.get((int) root * band + i % band);
+			}
+		}
+	}
+
+	/**
+	 * Copies a rectangle of another Frame into this one.
+	 * @param source - The frame to copy from.
+	 * @param sx - The left edge of the rectangle in the source.
+	 * @param sy - The top edge of the rectangle in the source.
+	 * @param x - The left edge of the rectangle in this frame.
+	 * @param y - The top edge of the rectangle in this frame.
+	 * @param w - The width of the rectangle.
+	 * @param h - The height of the rectangle.
+	 */
+	public void copy(Frame source, int sx, int sy, int x, int y, int w, int h) {
+		for(int row=0;row<h;row++) {
+			int from = (sy + row) * source.width + sx;
+			int to = (y + row) * width + x;
+			System.arraycopy(source.iterations, from, iterations, to, w);
+			System.arraycopy(source.escapes, from, escapes, to, w);
+		}
+	}
+
+	public String toString() {
+		return String.format("Frame(%dx%d)", width, height);
+	}
+}
@@ -61,6 +61,20 @@ class SimpleLinearGradient extends Gradient {
 	public SimpleLinearGradient(int maxColors, HSB... controlPoints) {
 		super(makeColors(maxColors, controlPoints));
 	}
+	
+	/**
+	 * Creates the blue, white and orange gradient used for the
+	 * Mandelbrot set on Wikipedia.
+	 * @param maxColors - The number of colors to generate.
+	 */
+	public static SimpleLinearGradient wikipedia(int maxColors) {
+		return new SimpleLinearGradient(maxColors,
+			HSB.fromRgb(0, 7, 100),
+			HSB.fromRgb(32, 107, 203),
+			HSB.fromRgb(237, 255, 255),
+			HSB.fromRgb(255, 170, 0),
+			HSB.fromRgb(0, 2, 0));
+	}
 
 	public static int[] makeColors(int maxColors, RGB... controlPoints) {
 		int[] colors = new int[maxColors];
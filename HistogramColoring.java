@@ -0,0 +1,105 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Colors a Frame by histogram equalization: each pixel gets the color at
+ * the fraction of escaped pixels which took at most as many iterations,
+ * so the colors of the gradient are spread evenly over the image whatever
+ * the maximum number of iterations is.
+ * All the work runs on the given pool: parallel streams and parallel array
+ * operations started from one of its threads stay on it.
+ * @author Blake
+ */
+public class HistogramColoring {
+
+	/**
+	 * Histograms wider than this many cells per pixel of the frame are
+	 * replaced by sorting the iterations, which costs the same whatever
+	 * the spread of iterations is.
+	 */
+	private static final int CELLS_PER_PIXEL = 4;
+
+	private HistogramColoring() { }
+
+	/**
+	 * Colors a whole frame through the gradient by histogram equalization.
+	 * Pixels which never bailed out are black.
+	 * @param frame - The frame to color.
+	 * @param gradient - The gradient to take colors from.
+	 * @param pixels - The output, packed RGB ints row by row.
+	 * @param pool - The pool to run on.
+	 */
+	public static void color(Frame frame, Gradient gradient, int[] pixels, ForkJoinPool pool) {
+		pool.submit(() -> color(frame, gradient, pixels, pool.getParallelism())).join();
+	}
+
+	private static void color(Frame frame, Gradient gradient, int[] pixels, int threads) {
+		int[] iterations = frame.iterations;
+		int min = IntStream.of(iterations).parallel().filter(i -> i != -1).min().orElse(-1);
+		if(min == -1) {
+			Arrays.fill(pixels, 0, iterations.length, 0);
+			return;
+		}
+		int max = IntStream.of(iterations).parallel().max().getAsInt();
+		int cells = max - min + 1;
+		int lastColor = gradient.getSize() - 1;
+
+		if(cells > CELLS_PER_PIXEL * (long) iterations.length) {
+			int[] sorted = IntStream.of(iterations).parallel().filter(i -> i != -1).toArray();
+			Arrays.parallelSort(sorted);
+			double total = sorted.length;
+			IntStream.range(0, iterations.length).parallel().forEach(p -> {
+				int i = iterations[p];
+				pixels[p] = i == -1 ? 0 : gradient.get((int) (upperBound(sorted, i) / total * lastColor));
+			});
+			return;
+		}
+
+		//each stripe counts its own block of pixels, so no counter is shared between threads
+		int stripes = (int) Math.max(1, Math.min(threads, CELLS_PER_PIXEL * (long) iterations.length / cells));
+		int[][] counts = new int[stripes][cells];
+		int block = (iterations.length + stripes - 1) / stripes;
+		IntStream.range(0, stripes).parallel().forEach(s -> {
+			int[] count = counts[s];
+			int to = Math.min(iterations.length, (s + 1) * block);
+			for(int p=s*block;p<to;p++) {
+				if(iterations[p] != -1) {
+					count[iterations[p] - min]++;
+				}
+			}
+		});
+		long[] cdf = new long[cells];
+		IntStream.range(0, cells).parallel().forEach(c -> {
+			long sum = 0;
+			for(int s=0;s<stripes;s++) {
+				sum += counts[s][c];
+			}
+			cdf[c] = sum;
+		});
+		Arrays.parallelPrefix(cdf, Long::sum);
+
+		double total = cdf[cells - 1];
+		IntStream.range(0, iterations.length).parallel().forEach(p -> {
+			int i = iterations[p];
+			pixels[p] = i == -1 ? 0 : gradient.get((int) (cdf[i - min] / total * lastColor));
+		});
+	}
+
+	/**
+	 * Returns the number of values in the sorted array which are at most value.
+	 */
+	private static int upperBound(int[] sorted, int value) {
+		int low = 0;
+		int high = sorted.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(sorted[mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,198 @@
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The program's log. Messages below the current level are dropped before
+ * they are formatted. The rest go into a bounded queue and are printed by
+ * a single daemon thread, so logging never blocks a render thread on the
+ * console: when the queue is full, messages are dropped and counted instead.
+ * The same message repeated back to back is printed once with its count,
+ * and since only the writer thread compares messages, that is race free.
+ * Trace points in hot loops are guarded by TRACE, a static final flag the
+ * JIT folds away, so they cost nothing unless the program was started with
+ * -Dfractals.trace=true:
+ * if(Log.TRACE) {
+ *     Log.trace("|z| = %s", z.abs());
+ * }
+ * @author Blake
+ */
+public final class Log {
+
+	public enum Level {
+		TRACE, DEBUG, INFO, WARN, ERROR, OFF
+	}
+
+	/**
+	 * Whether trace points are compiled in. Set with -Dfractals.trace=true,
+	 * which also lowers the level to TRACE.
+	 */
+	public static final boolean TRACE = Boolean.getBoolean("fractals.trace");
+	/**
+	 * How many messages may wait to be printed before new ones are dropped.
+	 */
+	public static final int CAPACITY = 4096;
+
+	private static final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(CAPACITY);
+	private static final AtomicLong dropped = new AtomicLong();
+	private static volatile Level level = TRACE ? Level.TRACE : Level.INFO;
+	private static volatile PrintStream out = System.out;
+
+	static {
+		Thread writer = new Thread(Log::write, "Log");
+		writer.setDaemon(true);
+		writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "Log flush"));
+	}
+
+	private Log() {
+	}
+
+	/**
+	 * A message waiting to be printed.
+	 */
+	private static final class Entry {
+
+		final Level level;
+		final String message;
+
+		Entry(Level level, String message) {
+			this.level = level;
+			this.message = message;
+		}
+	}
+
+	/**
+	 * Sets the lowest level which is printed.
+	 * @param level - The new level, or OFF to print nothing.
+	 */
+	public static void setLevel(Level level) {
+		Log.level = level;
+	}
+
+	public static Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Sets where messages are printed. System.out by default.
+	 * @param out - The new output.
+	 */
+	public static void setOutput(PrintStream out) {
+		Log.out = out;
+	}
+
+	public static boolean isEnabled(Level level) {
+		return level.compareTo(Log.level) >= 0;
+	}
+
+	/**
+	 * Returns how many messages were dropped because the queue was full.
+	 */
+	public static long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Logs a message, formatted like printf, if its level is enabled.
+	 * @param level - The level of the message.
+	 * @param format - The String format of the message.
+	 * @param args - The arguments for the format.
+	 */
+	public static void log(Level level, String format, Object... args) {
+		if(isEnabled(level)) {
+			enqueue(level, String.format(format, args));
+		}
+	}
+
+	public static void trace(String format, Object... args) {
+		log(Level.TRACE, format, args);
+	}
+
+	public static void debug(String format, Object... args) {
+		log(Level.DEBUG, format, args);
+	}
+
+	public static void info(String format, Object... args) {
+		log(Level.INFO, format, args);
+	}
+
+	public static void warn(String format, Object... args) {
+		log(Level.WARN, format, args);
+	}
+
+	public static void error(String format, Object... args) {
+		log(Level.ERROR, format, args);
+	}
+
+	private static void enqueue(Level level, String message) {
+		if(!queue.offer(new Entry(level, message))) {
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Waits until every message logged so far is printed. Called on exit.
+	 */
+	public static void flush() {
+		CountDownLatch done = new CountDownLatch(1);
+		try {
+			queue.put(done);
+			done.await();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The writer thread. Prints messages as they come, folding repeats.
+	 */
+	private static void write() {
+		String last = null;
+		int repeats = 0;
+		long reported = 0;
+		while(true) {
+			Object next;
+			try {
+				next = queue.take();
+			} catch(InterruptedException e) {
+				return;
+			}
+			PrintStream out = Log.out;
+			long lost = dropped.get();
+			if(lost != reported) {
+				out.printf("(%d messages dropped)%n", lost - reported);
+				reported = lost;
+			}
+			if(next instanceof CountDownLatch) {
+				if(repeats > 1) {
+					out.printf("\t(repeated %d times)%n", repeats);
+				}
+				last = null;
+				repeats = 0;
+				out.flush();
+				((CountDownLatch) next).countDown();
+				continue;
+			}
+			Entry entry = (Entry) next;
+			String message = entry.level == Level.INFO ? entry.message : entry.level + ": " + entry.message;
+			if(message.equals(last)) {
+				repeats++;
+				continue;
+			}
+			if(repeats > 1) {
+				out.printf("\t(repeated %d times)%n", repeats);
+			}
+			//messages from logf carry their own line break
+			if(message.endsWith("\n")) {
+				out.print(message);
+			} else {
+				out.println(message);
+			}
+			last = message;
+			repeats = 1;
+		}
+	}
+}
@@ -0,0 +1,363 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deep zoom engine for z = z ^ exponent + c. One reference orbit Z is
+ * iterated in high precision, and every pixel only iterates its difference
+ * from it in doubles: with c = C + dc and z = Z + d,
+ * d' = (Z + d) ^ exponent - Z ^ exponent + dc
+ *    = sum over k of binomial(exponent, k) * Z ^ (exponent - k) * d ^ k + dc.
+ * d and dc are tiny, so doubles keep plenty of relative precision however
+ * deep the zoom is, while the coordinates themselves could not be told
+ * apart in a double.
+ * Whenever Z + d comes nearer to the start of the orbit than to Z, and
+ * when a pixel outlives its reference, the pixel goes on from the start of
+ * the orbit with d = Z + d - Z0 (rebasing), which keeps d small where
+ * Z + d passes near Z0, so one reference serves the whole view.
+ * A pixel whose |Z + d| still falls far below |Z| has lost the precision
+ * of d (Pauldelbrot's glitch criterion), which rebasing rules out for z0 = 0.
+ * Such pixels are iterated again against the reference of their cell of a
+ * grid REFERENCE_SPACING pixels wide, computed on demand, up to
+ * MAX_REFERENCES, and if that glitches too, in full precision. Which
+ * references a pixel uses depends only on the pixel, not on the order
+ * pixels are rendered in.
+ * Safe to use from several threads. Pixels are given as offsets from
+ * the center in the complex plane.
+ * @author Blake
+ */
+public class Perturbation {
+
+	/**
+	 * |Z + d| below this fraction of |Z| marks a glitch.
+	 */
+	public static final double GLITCH_TOLERANCE = 1e-3;
+	/**
+	 * The most reference orbits a single render computes.
+	 */
+	public static final int MAX_REFERENCES = 32;
+	/**
+	 * The distance between the references of glitched pixels, in pixels.
+	 */
+	public static final int REFERENCE_SPACING = 64;
+
+	private static final int GLITCH = -2;
+
+	private final double z0Real;
+	private final double z0Imag;
+	private final int exponent;
+	private final double[] binomials;
+	private final double bailoutSquared;
+	private final BigDecimal centerX;
+	private final BigDecimal centerY;
+	private final int maxIterations;
+	private final MathContext context;
+	private final double cellSize;
+	private final Reference center;
+	/**
+	 * The references of glitched pixels by cell, guarded by this.
+	 */
+	private final Map<Long, FutureTask<Reference>> cells;
+	private final LongAdder glitches;
+	private final LongAdder unresolved;
+
+	/**
+	 * Constructor for this Perturbation. Computes the reference orbit at
+	 * the center right away.
+	 * @param z0 - The value z starts at for every pixel.
+	 * @param exponent - The exponent of z. At least 2.
+	 * @param bailoutValue - |z| at which an orbit escapes.
+	 * @param centerX - The x coordinate of the center, in full precision.
+	 * @param centerY - The y coordinate of the center, in full precision.
+	 * @param pixelSize - The distance between neighboring pixels.
+	 * @param maxIterations - The maximum number of iterations per pixel.
+	 */
+	public Perturbation(
+			CDouble z0,
+			int exponent,
+			double bailoutValue,
+			BigDecimal centerX,
+			BigDecimal centerY,
+			double pixelSize,
+			int maxIterations) {
+		if(exponent < 2) {
+			throw new IllegalArgumentException("exponent must be at least 2: " + exponent);
+		}
+		z0Real = z0.getReal();
+		z0Imag = z0.getImag();
+		this.exponent = exponent;
+		binomials = new double[exponent + 1];
+		binomials[0] = 1;
+		for(int k=1;k<=exponent;k++) {
+			binomials[k] = binomials[k - 1] * (exponent - k + 1) / k;
+		}
+		bailoutSquared = bailoutValue * bailoutValue;
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.maxIterations = maxIterations;
+		context = BigComplexDecimal.contextFor(centerX, centerY, pixelSize);
+		cellSize = pixelSize * REFERENCE_SPACING;
+		cells = new HashMap<>();
+		glitches = new LongAdder();
+		unresolved = new LongAdder();
+		center = new Reference(0, 0);
+	}
+
+	/**
+	 * Creates the state array iterate needs.
+	 * @return A new state array owned by the caller.
+	 */
+	public double[] newState() {
+		return new double[2];
+	}
+
+	/**
+	 * Iterates the pixel at the given offset from the center, switching to
+	 * the reference of its cell if it glitches, and to full precision if it
+	 * glitches against that too.
+	 * @param dx - The x offset of the pixel from the center.
+	 * @param dy - The y offset of the pixel from the center.
+	 * @param z - The state array. Holds Z + d afterwards.
+	 * @return -1 if the maximum number of iterations has been reached.
+	 * Otherwise, returns the number of iterations before z escaped.
+	 */
+	public int iterate(double dx, double dy, double[] z) {
+		int i = iterate(center, dx, dy, z);
+		if(i != GLITCH) {
+			return i;
+		}
+		glitches.increment();
+		Reference reference = reference(dx, dy);
+		if(reference != null) {
+			i = iterate(reference, dx, dy, z);
+			if(i != GLITCH) {
+				return i;
+			}
+		}
+		unresolved.increment();
+		return iteratePrecise(dx, dy, z);
+	}
+
+	/**
+	 * Returns the reference at the center of the pixel's cell, computing it
+	 * on first use. The orbit is computed outside the lock, so other threads
+	 * only wait for it if they need the same cell.
+	 * @return The reference, or null for the center's own cell, and for new
+	 * cells once MAX_REFERENCES are in use.
+	 */
+	private Reference reference(double dx, double dy) {
+		long column = Math.round(dx / cellSize);
+		long row = Math.round(dy / cellSize);
+		if(column == 0 && row == 0) {
+			return null;
+		}
+		FutureTask<Reference> task;
+		synchronized(this) {
+			Long cell = column << 32 ^ row & 0xffffffffL;
+			task = cells.get(cell);
+			if(task == null) {
+				if(cells.size() + 1 == MAX_REFERENCES) {
+					return null;
+				}
+				task = new FutureTask<>(() -> new Reference(column * cellSize, row * cellSize));
+				cells.put(cell, task);
+			}
+		}
+		//the first thread computes the orbit, any others wait for it in get
+		task.run();
+		try {
+			return task.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch(ExecutionException e) {
+			throw new IllegalStateException("Could not compute a reference orbit", e.getCause());
+		}
+	}
+
+	/**
+	 * Iterates the difference of a pixel from a reference.
+	 * @return The number of iterations, -1 for interior pixels, or GLITCH
+	 * if the pixel glitched.
+	 */
+	private int iterate(Reference reference, double dx, double dy, double[] z) {
+		double[] orbit = reference.orbit;
+		double[] glitchNorms = reference.glitchNorms;
+		int last = reference.last;
+		double cr = dx - reference.offsetX;
+		double ci = dy - reference.offsetY;
+		double z0r = orbit[0];
+		double z0i = orbit[1];
+		double dr = 0;
+		double di = 0;
+		//the iteration of the reference, which falls behind n each time the pixel is rebased
+		int m = 0;
+		for(int n=0;n<maxIterations;n++) {
+			double zr = orbit[2 * m];
+			double zi = orbit[2 * m + 1];
+			double fr = zr + dr;
+			double fi = zi + di;
+			double norm = fr * fr + fi * fi;
+			if(norm >= bailoutSquared) {
+				z[0] = fr;
+				z[1] = fi;
+				return n;
+			}
+			//go on from the start of the orbit once it is nearer than Zm, or the reference ran out
+			double br = fr - z0r;
+			double bi = fi - z0i;
+			if(m == last || br * br + bi * bi < dr * dr + di * di) {
+				zr = z0r;
+				zi = z0i;
+				dr = br;
+				di = bi;
+				m = 0;
+			}
+			if(norm < glitchNorms[m]) {
+				return GLITCH;
+			}
+			if(exponent == 2) {
+				double t = 2 * (zr * dr - zi * di) + dr * dr - di * di + cr;
+				di = 2 * (zr * di + zi * dr) + 2 * dr * di + ci;
+				dr = t;
+			} else {
+				//Horner's rule in d, with the powers of Z built up along the way
+				double sr = 1;
+				double si = 0;
+				double pr = zr;
+				double pi = zi;
+				for(int k=exponent-1;k>=1;k--) {
+					double t = sr * dr - si * di + binomials[k] * pr;
+					si = sr * di + si * dr + binomials[k] * pi;
+					sr = t;
+					t = pr * zr - pi * zi;
+					pi = pr * zi + pi * zr;
+					pr = t;
+				}
+				double t = sr * dr - si * di + cr;
+				di = sr * di + si * dr + ci;
+				dr = t;
+			}
+			m++;
+		}
+		z[0] = orbit[2 * m] + dr;
+		z[1] = orbit[2 * m + 1] + di;
+		return -1;
+	}
+
+	/**
+	 * Iterates the pixel at the given offset from the center entirely in
+	 * full precision, without perturbation. Thousands of times slower than
+	 * iterate, but a reference to check it against.
+	 * @param dx - The x offset of the pixel from the center.
+	 * @param dy - The y offset of the pixel from the center.
+	 * @return The same as iterate.
+	 */
+	public int iteratePrecise(double dx, double dy) {
+		return iteratePrecise(dx, dy, newState());
+	}
+
+	/**
+	 * Iterates the pixel in full precision, like iterate.
+	 * @param z - The state array. Holds z afterwards.
+	 */
+	private int iteratePrecise(double dx, double dy, double[] z) {
+		BigComplexDecimal c = new BigComplexDecimal(
+				centerX.add(new BigDecimal(dx)), centerY.add(new BigDecimal(dy)), context);
+		BigComplexDecimal w = new BigComplexDecimal(z0Real, z0Imag, context);
+		int i = 0;
+		while(i < maxIterations && w.norm().doubleValue() < bailoutSquared) {
+			w = next(w, c);
+			i++;
+		}
+		z[0] = w.getReal().doubleValue();
+		z[1] = w.getImag().doubleValue();
+		return i < maxIterations ? i : -1;
+	}
+
+	private BigComplexDecimal next(BigComplexDecimal z, BigComplexDecimal c) {
+		return (exponent == 2 ? z.square() : z.pow(exponent)).add(c);
+	}
+
+	/**
+	 * Returns the number of pixels which glitched against the center reference.
+	 */
+	public long getGlitches() {
+		return glitches.sum();
+	}
+
+	/**
+	 * Returns the number of pixels which still glitched against the
+	 * reference of their cell, or had none, and were iterated in full precision.
+	 */
+	public long getUnresolved() {
+		return unresolved.sum();
+	}
+
+	public synchronized int getReferences() {
+		return 1 + cells.size();
+	}
+
+	public int getDigits() {
+		return context.getPrecision();
+	}
+
+	public String toString() {
+		return String.format("Perturbation(references=%d, digits=%d, glitches=%d, unresolved=%d)",
+				getReferences(), getDigits(), getGlitches(), getUnresolved());
+	}
+
+	/**
+	 * A reference orbit, iterated in full precision and stored rounded to
+	 * doubles, from z0 until it escapes or reaches the maximum iterations.
+	 */
+	private class Reference {
+
+		final double offsetX;
+		final double offsetY;
+		/**
+		 * Z0, Z1, ... with the real and imaginary parts interleaved.
+		 */
+		final double[] orbit;
+		/**
+		 * (GLITCH_TOLERANCE * |Zn|) ^ 2 for each n.
+		 */
+		final double[] glitchNorms;
+		/**
+		 * The index of the last value of the orbit.
+		 */
+		final int last;
+
+		Reference(double offsetX, double offsetY) {
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+			BigComplexDecimal c = new BigComplexDecimal(
+					centerX.add(new BigDecimal(offsetX)), centerY.add(new BigDecimal(offsetY)), context);
+			BigComplexDecimal z = new BigComplexDecimal(z0Real, z0Imag, context);
+			double[] orbit = new double[2 * (maxIterations + 1)];
+			double[] glitchNorms = new double[maxIterations + 1];
+			double tolerance = GLITCH_TOLERANCE * GLITCH_TOLERANCE;
+			int n = 0;
+			while(true) {
+				double r = z.getReal().doubleValue();
+				double i = z.getImag().doubleValue();
+				orbit[2 * n] = r;
+				orbit[2 * n + 1] = i;
+				glitchNorms[n] = (r * r + i * i) * tolerance;
+				if(n == maxIterations || r * r + i * i >= bailoutSquared) {
+					break;
+				}
+				z = next(z, c);
+				n++;
+			}
+			last = n;
+			this.orbit = Arrays.copyOf(orbit, 2 * (n + 1));
+			this.glitchNorms = Arrays.copyOf(glitchNorms, n + 1);
+		}
+	}
+}
@@ -0,0 +1,325 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Counts what renders do: pixels, iterations, escaped and interior pixels,
+ * and the wall time of renders and of each tile. Renderers with metrics
+ * set report to them once per tile, after the tile is done, so the cost
+ * is a pass over the tile's iterations per tile; with none set, or
+ * disabled, it is a single check per tile. The counters are LongAdders,
+ * so threads reporting tiles at the same time do not contend.
+ * Register the metrics to read them over JMX. Independently, renderers
+ * emit the JFR events Fractals.Render and Fractals.Tile whenever a flight
+ * recording is running, e.g. java -XX:StartFlightRecording=filename=render.jfr.
+ * Iterations count the iterations actually executed: pixels filled in by
+ * Mariani-Silver or by progressive passes, and tiles taken from the cache,
+ * count none. Interior pixels count maxIterations without periodicity
+ * checking; with it, where they stopped is not known and they count none,
+ * so iterations and Giter/s never overstate the work done.
+ * @author Blake
+ */
+public class RenderMetrics implements RenderMetricsMBean {
+
+	public static final String OBJECT_NAME = "Fractals:type=RenderMetrics";
+
+	private volatile boolean enabled;
+	private final LongAdder renders = new LongAdder();
+	private final LongAdder cancelledRenders = new LongAdder();
+	private final LongAdder renderNanos = new LongAdder();
+	private final LongAdder pixels = new LongAdder();
+	private final LongAdder pixelsIterated = new LongAdder();
+	private final LongAdder iterations = new LongAdder();
+	private final LongAdder interior = new LongAdder();
+	private final LongAdder tiles = new LongAdder();
+	private final LongAdder cachedTiles = new LongAdder();
+	private final LongAdder tileNanos = new LongAdder();
+	private final LongAccumulator maxTileNanos = new LongAccumulator(Math::max, 0);
+	private volatile long lastRenderNanos;
+	private volatile long lastPixels;
+	private volatile long lastIterations;
+
+	/**
+	 * Constructor for enabled metrics.
+	 */
+	public RenderMetrics() {
+		enabled = true;
+	}
+
+	/**
+	 * Registers these metrics with the platform MBean server under OBJECT_NAME.
+	 * @throws JMException If they could not be registered, for example
+	 * because other metrics already are.
+	 */
+	public void register() throws JMException {
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+	}
+
+	/**
+	 * Counts a finished tile.
+	 * @param nanos - The wall time spent on the tile, over all passes.
+	 * @param pixels - The number of pixels in the tile.
+	 * @param iterations - The iterations executed for its pixels.
+	 * @param interior - The number of its pixels which never bailed out.
+	 * @param fromCache - Whether the tile was taken from the cache.
+	 */
+	void tileFinished(long nanos, int pixels, long iterations, int interior, boolean fromCache) {
+		tiles.increment();
+		if(fromCache) {
+			cachedTiles.increment();
+		}
+		tileNanos.add(nanos);
+		maxTileNanos.accumulate(nanos);
+		this.pixels.add(pixels);
+		this.iterations.add(iterations);
+		this.interior.add(interior);
+	}
+
+	/**
+	 * Counts a finished or cancelled render. Its tiles were counted already.
+	 * @param nanos - The wall time of the render.
+	 * @param pixels - The number of pixels in its finished tiles.
+	 * @param pixelsIterated - The number of pixels which were actually iterated.
+	 * @param iterations - The iterations executed for its finished tiles.
+	 * @param cancelled - Whether the render was cancelled.
+	 */
+	void renderFinished(long nanos, long pixels, long pixelsIterated, long iterations, boolean cancelled) {
+		renders.increment();
+		if(cancelled) {
+			cancelledRenders.increment();
+		}
+		renderNanos.add(nanos);
+		this.pixelsIterated.add(pixelsIterated);
+		lastRenderNanos = nanos;
+		lastPixels = pixels;
+		lastIterations = iterations;
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Turns counting on or off. Renders already in progress keep reporting.
+	 * @param enabled - Whether renderers report to these metrics.
+	 */
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public long getRenders() {
+		return renders.sum();
+	}
+
+	@Override
+	public long getCancelledRenders() {
+		return cancelledRenders.sum();
+	}
+
+	@Override
+	public long getPixels() {
+		return pixels.sum();
+	}
+
+	@Override
+	public long getPixelsIterated() {
+		return pixelsIterated.sum();
+	}
+
+	@Override
+	public long getIterations() {
+		return iterations.sum();
+	}
+
+	@Override
+	public long getEscapedPixels() {
+		return pixels.sum() - interior.sum();
+	}
+
+	@Override
+	public long getInteriorPixels() {
+		return interior.sum();
+	}
+
+	@Override
+	public long getTiles() {
+		return tiles.sum();
+	}
+
+	@Override
+	public long getCachedTiles() {
+		return cachedTiles.sum();
+	}
+
+	@Override
+	public double getRenderMillis() {
+		return renderNanos.sum() / 1e6;
+	}
+
+	@Override
+	public double getMeanTileMillis() {
+		long count = tiles.sum();
+		return count == 0 ? 0 : tileNanos.sum() / 1e6 / count;
+	}
+
+	@Override
+	public double getMaxTileMillis() {
+		return maxTileNanos.get() / 1e6;
+	}
+
+	@Override
+	public double getMegapixelsPerSecond() {
+		return perSecond(pixels.sum(), renderNanos.sum()) / 1e6;
+	}
+
+	@Override
+	public double getGigaiterationsPerSecond() {
+		return perSecond(iterations.sum(), renderNanos.sum()) / 1e9;
+	}
+
+	@Override
+	public double getLastRenderMillis() {
+		return lastRenderNanos / 1e6;
+	}
+
+	@Override
+	public double getLastMegapixelsPerSecond() {
+		return perSecond(lastPixels, lastRenderNanos) / 1e6;
+	}
+
+	@Override
+	public double getLastGigaiterationsPerSecond() {
+		return perSecond(lastIterations, lastRenderNanos) / 1e9;
+	}
+
+	@Override
+	public void reset() {
+		renders.reset();
+		cancelledRenders.reset();
+		renderNanos.reset();
+		pixels.reset();
+		pixelsIterated.reset();
+		iterations.reset();
+		interior.reset();
+		tiles.reset();
+		cachedTiles.reset();
+		tileNanos.reset();
+		maxTileNanos.reset();
+		lastRenderNanos = 0;
+		lastPixels = 0;
+		lastIterations = 0;
+	}
+
+	private static double perSecond(long count, long nanos) {
+		return nanos == 0 ? 0 : count * 1e9 / nanos;
+	}
+
+	/**
+	 * Returns true if a flight recording wants render or tile events.
+	 */
+	static boolean isRecording() {
+		return EventType.getEventType(RenderEvent.class).isEnabled()
+				|| EventType.getEventType(TileEvent.class).isEnabled();
+	}
+
+	public String toString() {
+		return String.format("%d renders (%d cancelled), %d tiles (%d cached, mean %.2fms, max %.2fms), "
+				+ "%d pixels (%d iterated, %d interior), %d iterations, %.1f Mpix/s, %.3f Giter/s",
+				getRenders(), getCancelledRenders(), getTiles(), getCachedTiles(),
+				getMeanTileMillis(), getMaxTileMillis(),
+				getPixels(), getPixelsIterated(), getInteriorPixels(), getIterations(),
+				getMegapixelsPerSecond(), getGigaiterationsPerSecond());
+	}
+}
+
+/**
+ * JFR event for a whole render, from the call to render until it returns.
+ * @author Blake
+ */
+@Name("Fractals.Render")
+@Label("Render")
+@Category("Fractals")
+@Description("A render of a fractal by a Renderer")
+class RenderEvent extends Event {
+
+	@Label("Fractal")
+	String fractal;
+
+	@Label("Engine")
+	String engine;
+
+	@Label("Mode")
+	String mode;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Max Iterations")
+	int maxIterations;
+
+	@Label("Pixels Iterated")
+	long pixelsIterated;
+
+	@Label("Iterations")
+	long iterations;
+
+	@Label("Interior Pixels")
+	long interior;
+
+	@Label("Cancelled")
+	boolean cancelled;
+}
+
+/**
+ * JFR event for a finished tile. Its time is summed over all passes, so
+ * the event is committed when the tile is done rather than timed itself.
+ * @author Blake
+ */
+@Name("Fractals.Tile")
+@Label("Tile")
+@Category("Fractals")
+@Description("A tile of a render, committed when it is done")
+class TileEvent extends Event {
+
+	@Label("X")
+	int x;
+
+	@Label("Y")
+	int y;
+
+	@Label("Width")
+	int width;
+
+	@Label("Height")
+	int height;
+
+	@Label("Wall Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long time;
+
+	@Label("Iterations")
+	long iterations;
+
+	@Label("Interior Pixels")
+	int interior;
+
+	@Label("Cached")
+	boolean fromCache;
+}
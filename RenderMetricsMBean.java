@@ -0,0 +1,52 @@
+/**
+ * The management interface of RenderMetrics, as seen over JMX, for example
+ * in JConsole under Fractals/RenderMetrics. Times are in milliseconds,
+ * throughput in millions of pixels and billions of executed iterations
+ * per second.
+ * @author Blake
+ */
+public interface RenderMetricsMBean {
+
+	public boolean isEnabled();
+
+	public void setEnabled(boolean enabled);
+
+	public long getRenders();
+
+	public long getCancelledRenders();
+
+	public long getPixels();
+
+	public long getPixelsIterated();
+
+	public long getIterations();
+
+	public long getEscapedPixels();
+
+	public long getInteriorPixels();
+
+	public long getTiles();
+
+	public long getCachedTiles();
+
+	public double getRenderMillis();
+
+	public double getMeanTileMillis();
+
+	public double getMaxTileMillis();
+
+	public double getMegapixelsPerSecond();
+
+	public double getGigaiterationsPerSecond();
+
+	public double getLastRenderMillis();
+
+	public double getLastMegapixelsPerSecond();
+
+	public double getLastGigaiterationsPerSecond();
+
+	/**
+	 * Sets every counter back to 0.
+	 */
+	public void reset();
+}
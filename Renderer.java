@@ -0,0 +1,1425 @@
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Renders fractals in parallel. The image is split into square tiles which
+ * are handed to a work stealing ForkJoinPool, so idle threads take tiles
+ * from busy ones instead of waiting on expensive regions.
+ * @author Blake
+ */
+public class Renderer {
+
+	public static final int DEFAULT_TILE_SIZE = 64;
+	/**
+	 * The periodicity tolerance as a fraction of the size of a pixel.
+	 */
+	public static final double PERIODICITY_TOLERANCE = 1e-3;
+	/**
+	 * The size of the blocks covered by one sample in the first pass
+	 * of a progressive render. Halved every pass.
+	 */
+	public static final int PROGRESSIVE_STEP = 16;
+	/**
+	 * Doubles are replaced by double-doubles or perturbation once pixels are
+	 * closer together than this fraction of the magnitude of the center's
+	 * coordinates, a few thousand times the spacing of doubles there.
+	 */
+	public static final double DOUBLE_THRESHOLD = 1e-12;
+	/**
+	 * The same for double-doubles, below which perturbation takes over.
+	 */
+	public static final double DOUBLE_DOUBLE_THRESHOLD = 1e-28;
+
+	private int threads;
+	private int tileSize;
+	private boolean periodicityChecking;
+	private boolean perturbation;
+	private boolean doubleDoubles;
+	private boolean vectorized;
+	private RenderMode mode;
+	private TileCache cache;
+	private RenderMetrics metrics;
+	private ForkJoinPool pool;
+	private volatile Job current;
+	private volatile long lastPixelsIterated;
+	private volatile Perturbation lastPerturbation;
+	private volatile Engine lastEngine;
+
+	/**
+	 * Constructor for this Renderer.
+	 * @param threads - The number of worker threads to render with.
+	 * @param tileSize - The width and height of each tile in pixels.
+	 */
+	public Renderer(int threads, int tileSize) {
+		setThreads(threads);
+		setTileSize(tileSize);
+		periodicityChecking = true;
+		perturbation = true;
+		doubleDoubles = true;
+		vectorized = true;
+		mode = RenderMode.TILED;
+	}
+
+	/**
+	 * Constructor which uses every available core and the default tile size.
+	 */
+	public Renderer() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_TILE_SIZE);
+	}
+
+	/**
+	 * Iterates every pixel of the viewport and stores the result of
+	 * fractal.iterate, and |z| when it bailed out, in the frame.
+	 * Uses the fractal's DoubleKernel instead when it has one, and in tiled
+	 * mode its VectorKernel, which iterates whole rows of a tile at once.
+	 * Pixels whose orbit becomes periodic are stopped early unless
+	 * periodicity checking is off or the fractal opts out of it.
+	 * With a TileCache set, the view is first aligned to the pixel grid of its
+	 * zoom level (moving it by less than a pixel), and tiles which lie
+	 * completely inside the view are taken from and stored in the cache.
+	 * Views too deep for doubles are rendered around the view's precise
+	 * center instead, without the cache: by the fractal's DoubleDoubleKernel
+	 * down to DOUBLE_DOUBLE_THRESHOLD, and by its Perturbation below.
+	 * Each finished tile and the render itself are counted in the metrics,
+	 * if set, and recorded as JFR events while a flight recording is running.
+	 * Blocks until the whole image is done or the render is cancelled.
+	 * @param fractal - The fractal being rendered.
+	 * @param view - The area of the complex plane being rendered.
+	 * @param maxIterations - The maximum number of iterations per pixel.
+	 * @param frame - The output, the same size as the view.
+	 * @param listener - Notified from the worker thread after each tile is done.
+	 * In progressive mode it is notified once per tile per pass. May be null.
+	 * @return True if the image is done, false if the render was cancelled.
+	 */
+	public boolean render(
+			Fractal<?> fractal,
+			Viewport view,
+			int maxIterations,
+			Frame frame,
+			TileListener listener) {
+		long start = System.nanoTime();
+		RenderEvent event = new RenderEvent();
+		event.begin();
+		DoubleDoubleKernel doubleDouble = null;
+		Perturbation perturbation = null;
+		if(isDeep(view)) {
+			if(doubleDoubles && (!this.perturbation || depth(view) >= DOUBLE_DOUBLE_THRESHOLD)) {
+				doubleDouble = fractal.getDoubleDoubleKernel();
+			}
+			if(doubleDouble == null && this.perturbation) {
+				perturbation = fractal.getPerturbation(
+						view.getPreciseCenterX(), view.getPreciseCenterY(),
+						view.pixelSize(), maxIterations);
+			}
+			//past what double-doubles resolve, but they still beat doubles
+			if(perturbation == null && doubleDouble == null && doubleDoubles) {
+				doubleDouble = fractal.getDoubleDoubleKernel();
+			}
+		} else if(cache != null) {
+			view = view.alignToGrid();
+		}
+		if(doubleDouble != null) {
+			doubleDouble.setCenter(view.getPreciseCenterX(), view.getPreciseCenterY());
+		}
+		lastPerturbation = perturbation;
+		VectorKernel vector = null;
+		if(vectorized && mode == RenderMode.TILED && doubleDouble == null && perturbation == null) {
+			vector = fractal.getVectorKernel();
+		}
+		lastEngine = perturbation != null ? Engine.PERTURBATION
+				: doubleDouble != null ? Engine.DOUBLE_DOUBLE
+				: vector != null ? Engine.VECTOR : Engine.DOUBLE;
+		Job job = new Job(fractal, view, maxIterations, frame, listener, vector, doubleDouble, perturbation);
+		current = job;
+		int columns = (view.width + job.offsetX + tileSize - 1) / tileSize;
+		int rows = (view.height + job.offsetY + tileSize - 1) / tileSize;
+		job.fromCache = new boolean[columns * rows];
+		if(job.measured) {
+			job.tileNanos = new long[columns * rows];
+			job.tileIterations = new long[columns * rows];
+		}
+		int step = job.firstStep;
+		for(;step>=1&&!job.cancelled;step/=2) {
+			pool.invoke(new TileTask(job, columns, 0, columns * rows, step));
+			if(listener != null && !job.cancelled) {
+				listener.passFinished(step);
+			}
+		}
+		current = null;
+		lastPixelsIterated = job.pixelsIterated.sum();
+		if(job.metrics != null) {
+			job.metrics.renderFinished(System.nanoTime() - start, job.pixels.sum(), lastPixelsIterated,
+					job.iterationCount.sum(), job.cancelled);
+		}
+		event.end();
+		if(event.shouldCommit()) {
+			event.fractal = fractal.toString();
+			event.engine = lastEngine.name();
+			event.mode = job.mode.name();
+			event.width = view.width;
+			event.height = view.height;
+			event.maxIterations = maxIterations;
+			event.pixelsIterated = lastPixelsIterated;
+			event.iterations = job.iterationCount.sum();
+			event.interior = job.interior.sum();
+			event.cancelled = job.cancelled;
+			event.commit();
+		}
+		return !job.cancelled;
+	}
+
+	/**
+	 * Renders the strip of an exponential map: every sample of the map, in
+	 * bands of tileSize rows handed to the pool. Each band picks its
+	 * arithmetic the way render does for a view whose pixels are as far
+	 * apart as the band's innermost samples, so the outer rows of a deep zoom
+	 * use the fractal's DoubleKernel and the inner rows double-doubles or
+	 * perturbation around the map's precise center. A single Perturbation,
+	 * precise enough for the innermost row, serves every band which needs one.
+	 * Ignores the render mode and the cache. Blocks until the strip is done.
+	 * @param fractal - The fractal being rendered.
+	 * @param map - The samples to render.
+	 * @param maxIterations - The maximum number of iterations per sample.
+	 * @param strip - The output, map.width by map.height.
+	 * @param listener - Notified from the worker thread after each band is
+	 * done, as a tile the width of the strip. May be null.
+	 */
+	public void renderExponentialMap(
+			Fractal<?> fractal,
+			ExponentialMap map,
+			int maxIterations,
+			Frame strip,
+			TileListener listener) {
+		double magnitude = Math.max(Math.abs(map.centerX.doubleValue()), Math.abs(map.centerY.doubleValue()));
+		Perturbation perturbation = null;
+		if(this.perturbation && map.spacing(map.height - 1) / magnitude < DOUBLE_THRESHOLD) {
+			perturbation = fractal.getPerturbation(map.centerX, map.centerY,
+					map.spacing(map.height - 1), maxIterations);
+		}
+		Perturbation shared = perturbation;
+		int bands = (map.height + tileSize - 1) / tileSize;
+		pool.submit(() -> IntStream.range(0, bands).parallel().forEach(band -> {
+			int y0 = band * tileSize;
+			int y1 = Math.min(y0 + tileSize, map.height);
+			renderBand(fractal, map, maxIterations, strip, y0, y1, magnitude, shared);
+			if(listener != null) {
+				listener.tileFinished(0, y0, map.width, y1 - y0);
+			}
+		})).join();
+	}
+
+	/**
+	 * Renders rows y0 to y1 of an exponential map, bounds exclusive.
+	 */
+	private void renderBand(
+			Fractal<?> fractal,
+			ExponentialMap map,
+			int maxIterations,
+			Frame strip,
+			int y0,
+			int y1,
+			double magnitude,
+			Perturbation shared) {
+		double spacing = map.spacing(y1 - 1);
+		double depth = spacing / magnitude;
+		DoubleDoubleKernel doubleDouble = null;
+		Perturbation perturbation = null;
+		if((this.perturbation || doubleDoubles) && depth < DOUBLE_THRESHOLD) {
+			if(doubleDoubles && (!this.perturbation || depth >= DOUBLE_DOUBLE_THRESHOLD)) {
+				doubleDouble = fractal.getDoubleDoubleKernel();
+			}
+			if(doubleDouble == null) {
+				perturbation = shared;
+			}
+			if(perturbation == null && doubleDouble == null && doubleDoubles) {
+				doubleDouble = fractal.getDoubleDoubleKernel();
+			}
+		}
+		double tolerance = 0;
+		if(periodicityChecking && fractal.isPeriodicitySafe() && perturbation == null) {
+			tolerance = spacing * PERIODICITY_TOLERANCE;
+		}
+		DoubleKernel kernel = null;
+		double[] z;
+		if(perturbation != null) {
+			z = perturbation.newState();
+		} else if(doubleDouble != null) {
+			doubleDouble.setCenter(map.centerX, map.centerY);
+			doubleDouble.setPeriodicityTolerance(tolerance);
+			z = doubleDouble.newState();
+		} else {
+			kernel = fractal.getKernel();
+			if(kernel != null) {
+				kernel.setPeriodicityTolerance(tolerance);
+			}
+			z = kernel == null ? null : kernel.newState();
+		}
+		double centerX = map.centerX.doubleValue();
+		double centerY = map.centerY.doubleValue();
+		double[] dx = new double[map.width];
+		double[] dy = new double[map.width];
+		int[] iterations = strip.iterations;
+		float[] escapes = strip.escapes;
+		for(int y=y0;y<y1;y++) {
+			map.xOffsets(y, dx);
+			map.yOffsets(y, dy);
+			for(int x=0,index=y*map.width;x<map.width;x++,index++) {
+				int i;
+				if(perturbation != null) {
+					i = perturbation.iterate(dx[x], dy[x], z);
+					escapes[index] = i == -1 ? Float.NaN : (float) Math.sqrt(z[0] * z[0] + z[1] * z[1]);
+				} else if(doubleDouble != null) {
+					i = doubleDouble.iterate(dx[x], dy[x], maxIterations, z);
+					escapes[index] = i == -1 ? Float.NaN : (float) Math.sqrt(z[0] * z[0] + z[1] * z[1]);
+				} else if(kernel != null) {
+					i = kernel.iterate(centerX + dx[x], centerY + dy[x], maxIterations, z);
+					escapes[index] = i == -1 ? Float.NaN : kernel.escape(z);
+				} else {
+					i = fractal.iterate(centerX + dx[x], centerY + dy[x], maxIterations, tolerance);
+					escapes[index] = Float.NaN;
+				}
+				iterations[index] = i;
+			}
+		}
+	}
+
+	/**
+	 * Colors a whole frame through the gradient, splitting the rows between
+	 * the threads of the pool. Takes milliseconds even for frames which
+	 * took hours to iterate.
+	 * @param frame - The frame to color.
+	 * @param gradient - The gradient to color with.
+	 * @param pixels - The output, packed RGB ints row by row.
+	 */
+	public void recolor(Frame frame, Gradient gradient, int[] pixels) {
+		pool.invoke(new ColorTask(frame, gradient, pixels, 0, frame.height));
+	}
+
+	/**
+	 * Colors a whole frame through the gradient by histogram equalization,
+	 * on the threads of the pool. See HistogramColoring.
+	 * @param frame - The frame to color.
+	 * @param gradient - The gradient to color with.
+	 * @param pixels - The output, packed RGB ints row by row.
+	 */
+	public void equalize(Frame frame, Gradient gradient, int[] pixels) {
+		HistogramColoring.color(frame, gradient, pixels, pool);
+	}
+
+	/**
+	 * Stops the render in progress, if any. Threads stop after the pixel they
+	 * are on, and render returns false without notifying the listener again.
+	 * May be called from any thread.
+	 */
+	public void cancel() {
+		Job job = current;
+		if(job != null) {
+			job.cancelled = true;
+		}
+	}
+
+	/**
+	 * Renders the viewport one pixel at a time, ignoring the render mode,
+	 * and returns how many pixels differ from the given frame.
+	 * Useful to check the output of the faster render modes.
+	 * @param fractal - The fractal which was rendered.
+	 * @param view - The area of the complex plane which was rendered.
+	 * @param maxIterations - The maximum number of iterations per pixel.
+	 * @param frame - The output of an earlier call to render.
+	 * @return The number of pixels which do not match a full render.
+	 */
+	public int verify(
+			Fractal<?> fractal,
+			Viewport view,
+			int maxIterations,
+			Frame frame) {
+		RenderMode previous = mode;
+		TileCache previousCache = cache;
+		boolean previousVectorized = vectorized;
+		RenderMetrics previousMetrics = metrics;
+		long pixelsIterated = lastPixelsIterated;
+		Engine engine = lastEngine;
+		Frame expected = new Frame(view.width, view.height);
+		try {
+			mode = RenderMode.TILED;
+			cache = null;
+			vectorized = false;
+			metrics = null;
+			render(fractal, previousCache == null || isDeep(view) ? view : view.alignToGrid(),
+					maxIterations, expected, null);
+		} finally {
+			mode = previous;
+			cache = previousCache;
+			vectorized = previousVectorized;
+			metrics = previousMetrics;
+			lastPixelsIterated = pixelsIterated;
+			lastEngine = engine;
+		}
+		int differences = 0;
+		for(int i=0;i<expected.iterations.length;i++) {
+			if(expected.iterations[i] != frame.iterations[i]) {
+				differences++;
+			}
+		}
+		return differences;
+	}
+
+	/**
+	 * Iterates evenly spread pixels of the viewport one at a time in full
+	 * precision with BigComplexDecimal, and returns how many differ from the
+	 * given frame. Checks deep renders, which verify can only compare
+	 * against another perturbation render.
+	 * @param fractal - The fractal which was rendered.
+	 * @param view - The area of the complex plane which was rendered.
+	 * @param maxIterations - The maximum number of iterations per pixel.
+	 * @param frame - The output of an earlier call to render.
+	 * @param samples - How many pixels to check.
+	 * @return The number of checked pixels which do not match.
+	 * @throws IllegalArgumentException If the fractal cannot be rendered by perturbation.
+	 */
+	public int verifyPrecise(
+			Fractal<?> fractal,
+			Viewport view,
+			int maxIterations,
+			Frame frame,
+			int samples) {
+		Perturbation perturbation = fractal.getPerturbation(
+				view.getPreciseCenterX(), view.getPreciseCenterY(),
+				view.pixelSize(), maxIterations);
+		if(perturbation == null) {
+			throw new IllegalArgumentException("No full precision render for " + fractal);
+		}
+		int pixels = view.width * view.height;
+		return pool.submit(() -> (int) IntStream.range(0, samples).parallel().filter(s -> {
+			int index = (int) ((long) s * pixels / samples);
+			int x = index % view.width;
+			int y = index / view.width;
+			return perturbation.iteratePrecise(view.xOffset(x), view.yOffset(y)) != frame.iterations[index];
+		}).count()).join();
+	}
+
+	/**
+	 * Returns true if pixels of the view are too close together for doubles
+	 * and a deeper engine is on.
+	 */
+	private boolean isDeep(Viewport view) {
+		return (perturbation || doubleDoubles) && depth(view) < DOUBLE_THRESHOLD;
+	}
+
+	/**
+	 * Returns the pixel size relative to the magnitude of the center's coordinates.
+	 */
+	private static double depth(Viewport view) {
+		return view.pixelSize() / Math.max(Math.abs(view.centerX), Math.abs(view.centerY));
+	}
+
+	/**
+	 * Sets the number of worker threads. Replaces the thread pool.
+	 * @param threads - The new number of worker threads.
+	 */
+	public void setThreads(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		if(pool != null) {
+			pool.shutdown();
+		}
+		this.threads = threads;
+		pool = new ForkJoinPool(threads);
+	}
+
+	/**
+	 * Sets the width and height of the tiles the image is split into.
+	 * @param tileSize - The new tile size in pixels.
+	 */
+	public void setTileSize(int tileSize) {
+		if(tileSize < 1) {
+			throw new IllegalArgumentException("tileSize must be positive: " + tileSize);
+		}
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Turns periodicity checking on or off. On by default.
+	 * @param periodicityChecking - Whether to stop periodic orbits early.
+	 */
+	public void setPeriodicityChecking(boolean periodicityChecking) {
+		this.periodicityChecking = periodicityChecking;
+	}
+
+	public boolean isPeriodicityChecking() {
+		return periodicityChecking;
+	}
+
+	/**
+	 * Turns double-doubles for views too deep for doubles on or off. On by default.
+	 * @param doubleDoubles - Whether to render deep views in double-double precision.
+	 */
+	public void setDoubleDoubles(boolean doubleDoubles) {
+		this.doubleDoubles = doubleDoubles;
+	}
+
+	public boolean isDoubleDoubles() {
+		return doubleDoubles;
+	}
+
+	/**
+	 * Turns iterating rows of pixels with the fractal's VectorKernel on or
+	 * off. On by default, but only used in tiled mode and when the Vector
+	 * API is available.
+	 * @param vectorized - Whether to use vector kernels.
+	 */
+	public void setVectorized(boolean vectorized) {
+		this.vectorized = vectorized;
+	}
+
+	public boolean isVectorized() {
+		return vectorized;
+	}
+
+	/**
+	 * Returns which arithmetic the last render used.
+	 * @return The engine of the last render, or null before the first.
+	 */
+	public Engine getLastEngine() {
+		return lastEngine;
+	}
+
+	/**
+	 * Turns perturbation for views too deep for doubles on or off. On by default.
+	 * @param perturbation - Whether to render deep views by perturbation.
+	 */
+	public void setPerturbation(boolean perturbation) {
+		this.perturbation = perturbation;
+	}
+
+	public boolean isPerturbation() {
+		return perturbation;
+	}
+
+	/**
+	 * Returns the Perturbation which rendered the last render, with its
+	 * counts of references and glitches, or null if it was rendered in doubles.
+	 * @return The last Perturbation, or null.
+	 */
+	public Perturbation getLastPerturbation() {
+		return lastPerturbation;
+	}
+
+	/**
+	 * Sets how the pixels of each tile are computed.
+	 * @param mode - The new render mode.
+	 */
+	public void setMode(RenderMode mode) {
+		this.mode = mode;
+	}
+
+	public RenderMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Sets the cache tiles are looked up in and stored to.
+	 * @param cache - The new cache, or null to render without one.
+	 */
+	public void setCache(TileCache cache) {
+		this.cache = cache;
+	}
+
+	public TileCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Sets the metrics renders report to.
+	 * @param metrics - The new metrics, or null to render without counting.
+	 */
+	public void setMetrics(RenderMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public RenderMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns how many pixels were actually iterated by the last render.
+	 * Render modes which fill in pixels without iterating them
+	 * report less than width * height.
+	 * @return The number of iterated pixels.
+	 */
+	public long getLastPixelsIterated() {
+		return lastPixelsIterated;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Everything the tasks of a single render share.
+	 */
+	private class Job {
+
+		final Fractal<?> fractal;
+		final DoubleKernel kernel;
+		final VectorKernel vector;
+		final DoubleDoubleKernel doubleDouble;
+		final Perturbation perturbation;
+		final double tolerance;
+		final Viewport view;
+		final int maxIterations;
+		final Frame frame;
+		final int[] iterations;
+		final float[] escapes;
+		/**
+		 * Whether escapes hold the index of the root each pixel went to.
+		 */
+		final boolean basins;
+		final TileListener listener;
+		final RenderMode mode;
+		final LongAdder pixelsIterated;
+		/**
+		 * The metrics to report to, or null when they are off.
+		 */
+		final RenderMetrics metrics;
+		/**
+		 * Whether finished tiles are measured, for the metrics or for JFR.
+		 */
+		final boolean measured;
+		final LongAdder pixels;
+		final LongAdder iterationCount;
+		final LongAdder interior;
+		final int firstStep;
+		/**
+		 * How far the tile grid starts left of and above the image, so
+		 * tile edges fall on multiples of the tile size on the global grid.
+		 */
+		final int offsetX;
+		final int offsetY;
+		/**
+		 * Describes the zoom level for TileCache keys, or null when
+		 * the cache is not used.
+		 */
+		final String level;
+		boolean[] fromCache;
+		/**
+		 * The wall time spent on each tile so far, when measured.
+		 */
+		long[] tileNanos;
+		/**
+		 * The iterations executed for each tile so far, when measured.
+		 */
+		long[] tileIterations;
+		volatile boolean cancelled;
+
+		Job(
+				Fractal<?> fractal,
+				Viewport view,
+				int maxIterations,
+				Frame frame,
+				TileListener listener,
+				VectorKernel vector,
+				DoubleDoubleKernel doubleDouble,
+				Perturbation perturbation) {
+			this.fractal = fractal;
+			this.vector = vector;
+			this.doubleDouble = doubleDouble;
+			this.perturbation = perturbation;
+			this.view = view;
+			this.maxIterations = maxIterations;
+			this.frame = frame;
+			iterations = frame.iterations;
+			escapes = frame.escapes;
+			basins = fractal.getRoots() != null;
+			this.listener = listener;
+			mode = Renderer.this.mode;
+			pixelsIterated = new LongAdder();
+			RenderMetrics metrics = Renderer.this.metrics;
+			this.metrics = metrics != null && metrics.isEnabled() ? metrics : null;
+			measured = this.metrics != null || RenderMetrics.isRecording();
+			pixels = new LongAdder();
+			iterationCount = new LongAdder();
+			interior = new LongAdder();
+			double tolerance = 0;
+			if(periodicityChecking && fractal.isPeriodicitySafe() && perturbation == null) {
+				tolerance = view.pixelSize() * PERIODICITY_TOLERANCE;
+			}
+			this.tolerance = tolerance;
+			kernel = fractal.getKernel();
+			if(kernel != null) {
+				kernel.setPeriodicityTolerance(tolerance);
+			}
+			if(vector != null) {
+				vector.setPeriodicityTolerance(tolerance);
+			}
+			if(doubleDouble != null) {
+				doubleDouble.setPeriodicityTolerance(tolerance);
+			}
+			firstStep = mode == RenderMode.PROGRESSIVE ? PROGRESSIVE_STEP : 1;
+			if(cache != null && view.isAligned()) {
+				offsetX = (int) Math.floorMod(view.getGridX(), (long) tileSize);
+				offsetY = (int) Math.floorMod(view.getGridY(), (long) tileSize);
+				//Mariani-Silver can differ from a full render, so its tiles are kept apart
+				level = String.format("%s[%s, z0=%s, maxIterations=%d, tolerance=%s, pixel=%s,%s, tile=%d, %s]",
+						fractal.getClass().getName(), fractal, fractal.getZ0(),
+						maxIterations, tolerance,
+						view.getStepX(), view.getStepY(),
+						tileSize, mode == RenderMode.MARIANI_SILVER ? "approximate" : "exact");
+			} else {
+				offsetX = 0;
+				offsetY = 0;
+				level = null;
+			}
+		}
+
+		/**
+		 * Returns the cache key of the tile whose top left pixel is (x, y).
+		 */
+		TileCache.Key tileKey(int x, int y) {
+			return new TileCache.Key(level,
+					Math.floorDiv(view.getGridX() + x, tileSize),
+					Math.floorDiv(view.getGridY() + y, tileSize));
+		}
+
+		/**
+		 * Counts the finished tile from (x0, y0) to (x1, y1), bounds exclusive,
+		 * for the metrics and JFR.
+		 * @param executed - The iterations executed for the tile, see executed.
+		 */
+		void tileFinished(int x0, int y0, int x1, int y1, long nanos, long executed, boolean cached) {
+			int width = view.width;
+			int inside = 0;
+			for(int y=y0;y<y1;y++) {
+				for(int index=y*width+x0,end=y*width+x1;index<end;index++) {
+					if(iterations[index] == -1) {
+						inside++;
+					}
+				}
+			}
+			int count = (x1 - x0) * (y1 - y0);
+			pixels.add(count);
+			iterationCount.add(executed);
+			interior.add(inside);
+			if(metrics != null) {
+				metrics.tileFinished(nanos, count, executed, inside, cached);
+			}
+			TileEvent event = new TileEvent();
+			if(event.shouldCommit()) {
+				event.x = x0;
+				event.y = y0;
+				event.width = x1 - x0;
+				event.height = y1 - y0;
+				event.time = nanos;
+				event.iterations = executed;
+				event.interior = inside;
+				event.fromCache = cached;
+				event.commit();
+			}
+		}
+
+		/**
+		 * Returns how many iterations a pixel took, given what iterate
+		 * returned for it. Interior pixels took maxIterations unless
+		 * periodicity checking stopped them early, which the kernels do not
+		 * report, so with periodicity checking they are not counted.
+		 */
+		long executed(int i) {
+			return i != -1 ? i : tolerance == 0 ? maxIterations : 0;
+		}
+
+		/**
+		 * Creates the state array a task passes to iterate.
+		 */
+		double[] newState() {
+			if(perturbation != null) {
+				return perturbation.newState();
+			}
+			if(doubleDouble != null) {
+				return doubleDouble.newState();
+			}
+			return kernel == null ? null : kernel.newState();
+		}
+
+		/**
+		 * Iterates a single pixel and stores the result, and the kernel's
+		 * escape value if it bailed out. Does nothing once the job is cancelled.
+		 * @return The number of iterations.
+		 */
+		int iterate(int x, int y, double[] z) {
+			if(cancelled) {
+				return -1;
+			}
+			int index = y * view.width + x;
+			int i;
+			if(perturbation != null) {
+				i = perturbation.iterate(view.xOffset(x), view.yOffset(y), z);
+				escapes[index] = i == -1 ? Float.NaN : (float) Math.sqrt(z[0] * z[0] + z[1] * z[1]);
+			} else if(doubleDouble != null) {
+				i = doubleDouble.iterate(view.xOffset(x), view.yOffset(y), maxIterations, z);
+				escapes[index] = i == -1 ? Float.NaN : (float) Math.sqrt(z[0] * z[0] + z[1] * z[1]);
+			} else if(kernel != null) {
+				i = kernel.iterate(view.xCoord(x), view.yCoord(y), maxIterations, z);
+				escapes[index] = i == -1 ? Float.NaN : kernel.escape(z);
+			} else {
+				i = fractal.iterate(view.xCoord(x), view.yCoord(y), maxIterations, tolerance);
+				escapes[index] = Float.NaN;
+			}
+			iterations[index] = i;
+			return i;
+		}
+	}
+
+	/**
+	 * Renders a range of tiles. Ranges are split in half until a single
+	 * tile is left, which gives the pool plenty of work to steal.
+	 */
+	@SuppressWarnings("serial")
+	private class TileTask extends RecursiveAction {
+
+		private final Job job;
+		private final int columns;
+		private final int from;
+		private final int to;
+		private final int step;
+
+		TileTask(Job job, int columns, int from, int to, int step) {
+			this.job = job;
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+			this.step = step;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(
+						new TileTask(job, columns, from, mid, step),
+						new TileTask(job, columns, mid, to, step));
+				return;
+			}
+			if(job.cancelled) {
+				return;
+			}
+			long start = job.measured ? System.nanoTime() : 0;
+			int x0 = from % columns * tileSize - job.offsetX;
+			int y0 = from / columns * tileSize - job.offsetY;
+			int x1 = Math.min(x0 + tileSize, job.view.width);
+			int y1 = Math.min(y0 + tileSize, job.view.height);
+			x0 = Math.max(x0, 0);
+			y0 = Math.max(y0, 0);
+			TileCache.Key key = null;
+			if(job.level != null && x1 - x0 == tileSize && y1 - y0 == tileSize) {
+				key = job.tileKey(x0, y0);
+				if(step == job.firstStep) {
+					Frame tile = cache.get(key);
+					if(tile != null) {
+						job.frame.copy(tile, 0, 0, x0, y0, tileSize, tileSize);
+						job.fromCache[from] = true;
+					}
+				}
+			}
+			long executed = 0;
+			if(!job.fromCache[from]) {
+				executed = renderTile(x0, y0, x1, y1);
+				if(key != null && step == 1 && !job.cancelled) {
+					Frame tile = new Frame(tileSize, tileSize);
+					tile.copy(job.frame, x0, y0, 0, 0, tileSize, tileSize);
+					cache.put(key, tile);
+				}
+			}
+			if(job.measured && !job.cancelled) {
+				job.tileNanos[from] += System.nanoTime() - start;
+				job.tileIterations[from] += executed;
+				if(step == 1) {
+					job.tileFinished(x0, y0, x1, y1, job.tileNanos[from], job.tileIterations[from],
+							job.fromCache[from]);
+				}
+			}
+			if(job.listener != null && !job.cancelled) {
+				job.listener.tileFinished(x0, y0, x1 - x0, y1 - y0);
+			}
+		}
+
+		/**
+		 * Renders the tile in the job's mode.
+		 * @return The iterations executed.
+		 */
+		private long renderTile(int x0, int y0, int x1, int y1) {
+			switch(job.mode) {
+			case MARIANI_SILVER:
+				MarianiSilverTask task = new MarianiSilverTask(job, x0, y0, x1 - 1, y1 - 1, true);
+				task.compute();
+				return task.executed;
+			case PROGRESSIVE:
+				return progressivePass(x0, y0, x1, y1);
+			default:
+				if(job.vector != null) {
+					return renderRows(x0, y0, x1, y1);
+				}
+				double[] z = job.newState();
+				long executed = 0;
+				for(int y=y0;y<y1;y++) {
+					for(int x=x0;x<x1;x++) {
+						executed += job.executed(job.iterate(x, y, z));
+					}
+				}
+				job.pixelsIterated.add((x1 - x0) * (y1 - y0));
+				return executed;
+			}
+		}
+
+		/**
+		 * Iterates the tile a row at a time with the job's VectorKernel.
+		 * @return The iterations executed.
+		 */
+		private long renderRows(int x0, int y0, int x1, int y1) {
+			Viewport view = job.view;
+			double[] x = new double[x1 - x0];
+			for(int i=x0;i<x1;i++) {
+				x[i - x0] = view.xCoord(i);
+			}
+			int rows = 0;
+			long executed = 0;
+			for(int y=y0;y<y1&&!job.cancelled;y++) {
+				job.vector.iterateRow(x, view.yCoord(y), x1 - x0, job.maxIterations,
+						job.iterations, job.escapes, y * view.width + x0);
+				for(int index=y*view.width+x0,end=y*view.width+x1;index<end;index++) {
+					executed += job.executed(job.iterations[index]);
+				}
+				rows++;
+			}
+			job.pixelsIterated.add(rows * (x1 - x0));
+			return executed;
+		}
+
+		/**
+		 * Iterates one pixel per step x step block of the tile and fills the
+		 * block with it. Pixels sampled by the previous, coarser pass sit on
+		 * every other row and column and are not iterated again, only their
+		 * blocks shrink. Samples are placed relative to the tile's corner so
+		 * blocks never reach into another tile.
+		 * @return The iterations executed.
+		 */
+		private long progressivePass(int x0, int y0, int x1, int y1) {
+			int[] iterations = job.iterations;
+			float[] escapes = job.escapes;
+			int width = job.view.width;
+			double[] z = job.newState();
+			int count = 0;
+			long executed = 0;
+			for(int y=y0;y<y1;y+=step) {
+				for(int x=x0;x<x1;x+=step) {
+					if(step < PROGRESSIVE_STEP
+							&& (x - x0) % (2 * step) == 0
+							&& (y - y0) % (2 * step) == 0) {
+						continue;
+					}
+					int i = job.iterate(x, y, z);
+					count++;
+					executed += job.executed(i);
+					if(step > 1) {
+						int right = Math.min(x + step, x1);
+						int bottom = Math.min(y + step, y1);
+						float escape = escapes[y * width + x];
+						for(int by=y;by<bottom;by++) {
+							Arrays.fill(iterations, by * width + x, by * width + right, i);
+							Arrays.fill(escapes, by * width + x, by * width + right, escape);
+						}
+					}
+				}
+			}
+			job.pixelsIterated.add(count);
+			return executed;
+		}
+	}
+
+	/**
+	 * Mariani-Silver subdivision of the rectangle from (x0, y0) to (x1, y1),
+	 * bounds inclusive. Once the border of the rectangle is known, a border
+	 * with a single dwell means the whole rectangle has that dwell, so the
+	 * inside is filled without iterating. For fractals with roots the border
+	 * also has to go to a single root, whose index the inside is filled with. Otherwise the rectangle is cut
+	 * into 4 by a cross through its middle, the cross is iterated, and the
+	 * 4 quarters (whose borders are now known) are handled in parallel.
+	 */
+	@SuppressWarnings("serial")
+	private class MarianiSilverTask extends RecursiveAction {
+
+		/**
+		 * Rectangles this small are iterated pixel by pixel.
+		 */
+		private static final int MIN_SIZE = 4;
+
+		private final Job job;
+		private final int x0;
+		private final int y0;
+		private final int x1;
+		private final int y1;
+		private final boolean computeBorder;
+		/**
+		 * The iterations executed for the rectangle, once computed.
+		 */
+		long executed;
+
+		MarianiSilverTask(Job job, int x0, int y0, int x1, int y1, boolean computeBorder) {
+			this.job = job;
+			this.x0 = x0;
+			this.y0 = y0;
+			this.x1 = x1;
+			this.y1 = y1;
+			this.computeBorder = computeBorder;
+		}
+
+		@Override
+		protected void compute() {
+			int[] iterations = job.iterations;
+			int width = job.view.width;
+			double[] z = job.newState();
+			int count = 0;
+			if(x1 - x0 < MIN_SIZE || y1 - y0 < MIN_SIZE) {
+				int from = computeBorder ? 0 : 1;
+				for(int y=y0+from;y<=y1-from;y++) {
+					for(int x=x0+from;x<=x1-from;x++) {
+						executed += job.executed(job.iterate(x, y, z));
+						count++;
+					}
+				}
+				job.pixelsIterated.add(count);
+				return;
+			}
+			if(computeBorder) {
+				for(int x=x0;x<=x1;x++) {
+					executed += job.executed(job.iterate(x, y0, z));
+					executed += job.executed(job.iterate(x, y1, z));
+				}
+				for(int y=y0+1;y<y1;y++) {
+					executed += job.executed(job.iterate(x0, y, z));
+					executed += job.executed(job.iterate(x1, y, z));
+				}
+				count += 2 * (x1 - x0 + 1) + 2 * (y1 - y0 - 1);
+			}
+			int dwell = iterations[y0 * width + x0];
+			float root = job.escapes[y0 * width + x0];
+			boolean uniform = true;
+			for(int x=x0;x<=x1&&uniform;x++) {
+				uniform = same(y0 * width + x, dwell, root) && same(y1 * width + x, dwell, root);
+			}
+			for(int y=y0+1;y<y1&&uniform;y++) {
+				uniform = same(y * width + x0, dwell, root) && same(y * width + x1, dwell, root);
+			}
+			if(uniform) {
+				float escape = job.basins ? root : Float.NaN;
+				for(int y=y0+1;y<y1;y++) {
+					Arrays.fill(iterations, y * width + x0 + 1, y * width + x1, dwell);
+					Arrays.fill(job.escapes, y * width + x0 + 1, y * width + x1, escape);
+				}
+				job.pixelsIterated.add(count);
+				return;
+			}
+			int mx = (x0 + x1) >>> 1;
+			int my = (y0 + y1) >>> 1;
+			for(int x=x0+1;x<x1;x++) {
+				executed += job.executed(job.iterate(x, my, z));
+			}
+			for(int y=y0+1;y<y1;y++) {
+				if(y != my) {
+					executed += job.executed(job.iterate(mx, y, z));
+				}
+			}
+			count += (x1 - x0 - 1) + (y1 - y0 - 2);
+			job.pixelsIterated.add(count);
+			MarianiSilverTask[] quarters = {
+					new MarianiSilverTask(job, x0, y0, mx, my, false),
+					new MarianiSilverTask(job, mx, y0, x1, my, false),
+					new MarianiSilverTask(job, x0, my, mx, y1, false),
+					new MarianiSilverTask(job, mx, my, x1, y1, false)};
+			invokeAll(quarters);
+			for(MarianiSilverTask quarter : quarters) {
+				executed += quarter.executed;
+			}
+		}
+
+		/**
+		 * Returns whether a border pixel has the dwell, and the root too
+		 * for fractals with roots.
+		 */
+		private boolean same(int index, int dwell, float root) {
+			return job.iterations[index] == dwell
+					&& (!job.basins || Float.floatToIntBits(job.escapes[index]) == Float.floatToIntBits(root));
+		}
+	}
+}
+
+/**
+ * Colors a range of rows of a Frame. Ranges are split in half until
+ * they are a few rows long.
+ */
+@SuppressWarnings("serial")
+class ColorTask extends RecursiveAction {
+
+	private static final int ROWS = 16;
+
+	private final Frame frame;
+	private final Gradient gradient;
+	private final int[] pixels;
+	private final int from;
+	private final int to;
+
+	ColorTask(Frame frame, Gradient gradient, int[] pixels, int from, int to) {
+		this.frame = frame;
+		this.gradient = gradient;
+		this.pixels = pixels;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	protected void compute() {
+		if(to - from > ROWS) {
+			int mid = (from + to) >>> 1;
+			invokeAll(
+					new ColorTask(frame, gradient, pixels, from, mid),
+					new ColorTask(frame, gradient, pixels, mid, to));
+			return;
+		}
+		frame.color(gradient, pixels, 0, from, frame.width, to - from);
+	}
+}
+
+/**
+ * The ways a Renderer can compute the pixels of a tile.
+ * @author Blake
+ */
+enum RenderMode {
+	/**
+	 * Iterates every pixel.
+	 */
+	TILED,
+	/**
+	 * Mariani-Silver subdivision: iterates the border of each rectangle
+	 * and fills it in without iterating when the border has a single dwell.
+	 */
+	MARIANI_SILVER,
+	/**
+	 * Coarse to fine: a first pass iterates one pixel per 16x16 block and
+	 * every following pass halves the block size, reusing the pixels
+	 * already iterated, until every pixel is done.
+	 */
+	PROGRESSIVE
+}
+
+/**
+ * The arithmetic a Renderer computes pixels with.
+ * @author Blake
+ */
+enum Engine {
+	/**
+	 * The fractal's DoubleKernel, or iterate.
+	 */
+	DOUBLE,
+	/**
+	 * The fractal's VectorKernel, several pixels per instruction.
+	 */
+	VECTOR,
+	/**
+	 * The fractal's DoubleDoubleKernel, for about 16 more digits.
+	 */
+	DOUBLE_DOUBLE,
+	/**
+	 * The fractal's Perturbation, for any depth.
+	 */
+	PERTURBATION
+}
+
+/**
+ * An immutable description of the part of the complex plane being rendered
+ * and the size of the image it is rendered to. A window of a view is the
+ * part of it one TileWorker renders, with the view's center and pixels.
+ * @author Blake
+ */
+class Viewport {
+
+	public final int width;
+	public final int height;
+	public final double centerX;
+	public final double centerY;
+	public final double scaleX;
+	public final double scaleY;
+	private final boolean aligned;
+	private final long gridX;
+	private final long gridY;
+	/**
+	 * The distance between neighboring pixels in the complex plane.
+	 */
+	private final double stepX;
+	private final double stepY;
+	/**
+	 * The pixel at the left and top edge, counted from the center's.
+	 */
+	private final int originX;
+	private final int originY;
+	/**
+	 * The center in full precision, or null when the doubles are exact.
+	 */
+	private final BigDecimal preciseX;
+	private final BigDecimal preciseY;
+
+	/**
+	 * Constructor for this Viewport.
+	 * @param width - The width of the image in pixels.
+	 * @param height - The height of the image in pixels.
+	 * @param centerX - The x coordinate of the center.
+	 * @param centerY - The y coordinate of the center.
+	 * @param scaleX - The scale of x from the left to right of the image.
+	 * @param scaleY - The scale of y from the bottom to the top of the image.
+	 */
+	public Viewport(
+			int width, int height,
+			double centerX, double centerY,
+			double scaleX, double scaleY) {
+		this.width = width;
+		this.height = height;
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.scaleX = scaleX;
+		this.scaleY = scaleY;
+		aligned = false;
+		gridX = 0;
+		gridY = 0;
+		stepX = scaleX / width;
+		stepY = scaleY / height;
+		originX = -(width / 2);
+		originY = -(height / 2);
+		preciseX = null;
+		preciseY = null;
+	}
+
+	/**
+	 * Constructor for a Viewport whose center needs more precision than a
+	 * double holds, for deep zooms.
+	 * @param width - The width of the image in pixels.
+	 * @param height - The height of the image in pixels.
+	 * @param centerX - The x coordinate of the center.
+	 * @param centerY - The y coordinate of the center.
+	 * @param scaleX - The scale of x from the left to right of the image.
+	 * @param scaleY - The scale of y from the bottom to the top of the image.
+	 */
+	public Viewport(
+			int width, int height,
+			BigDecimal centerX, BigDecimal centerY,
+			double scaleX, double scaleY) {
+		this.width = width;
+		this.height = height;
+		this.centerX = centerX.doubleValue();
+		this.centerY = centerY.doubleValue();
+		this.scaleX = scaleX;
+		this.scaleY = scaleY;
+		aligned = false;
+		gridX = 0;
+		gridY = 0;
+		stepX = scaleX / width;
+		stepY = scaleY / height;
+		originX = -(width / 2);
+		originY = -(height / 2);
+		preciseX = centerX;
+		preciseY = centerY;
+	}
+
+	private Viewport(
+			Viewport view,
+			int x0, int y0,
+			int width, int height,
+			boolean aligned,
+			long gridX, long gridY) {
+		this.width = width;
+		this.height = height;
+		this.aligned = aligned;
+		this.gridX = gridX;
+		this.gridY = gridY;
+		stepX = view.stepX;
+		stepY = view.stepY;
+		originX = view.originX + x0;
+		originY = view.originY + y0;
+		scaleX = stepX * width;
+		scaleY = stepY * height;
+		if(aligned) {
+			centerX = stepX * (gridX - originX);
+			centerY = stepY * (gridY - originY);
+			preciseX = null;
+			preciseY = null;
+		} else {
+			centerX = view.centerX;
+			centerY = view.centerY;
+			preciseX = view.preciseX;
+			preciseY = view.preciseY;
+		}
+	}
+
+	/**
+	 * Returns the part of this Viewport from pixel (x0, y0) which is width
+	 * by height pixels. Pixel (x, y) of the window has exactly the
+	 * coordinates of pixel (x0 + x, y0 + y) of this view, and the window
+	 * keeps this view's center, which is the perturbation reference of deep
+	 * views, so rendering the windows of a view gives the same frame as
+	 * rendering the view.
+	 * @param x0 - The left edge of the window in pixels of this view.
+	 * @param y0 - The top edge of the window in pixels of this view.
+	 * @param width - The width of the window in pixels.
+	 * @param height - The height of the window in pixels.
+	 * @return The window.
+	 */
+	public Viewport window(int x0, int y0, int width, int height) {
+		return new Viewport(this, x0, y0, width, height, aligned, gridX + x0, gridY + y0);
+	}
+
+	/**
+	 * Returns a copy of this Viewport moved by less than a pixel so that
+	 * every pixel lands on the global grid of pixels of this size, the one
+	 * with a pixel at 0. Pixel (x, y) of an aligned view is at
+	 * (gridX + x, gridY + y) on that grid, so views of the same zoom level
+	 * compute exactly the same coordinates for the pixels they share.
+	 * The precise center, if any, is not kept.
+	 * @return An aligned Viewport.
+	 */
+	public Viewport alignToGrid() {
+		if(aligned) {
+			return this;
+		}
+		return new Viewport(
+				this, 0, 0,
+				width, height,
+				true,
+				Math.round(centerX / stepX) + originX,
+				Math.round(centerY / stepY) + originY);
+	}
+
+	public boolean isAligned() {
+		return aligned;
+	}
+
+	/**
+	 * Returns the column of the global grid the left edge of an aligned view is on.
+	 */
+	public long getGridX() {
+		return gridX;
+	}
+
+	/**
+	 * Returns the row of the global grid the top edge of an aligned view is on.
+	 */
+	public long getGridY() {
+		return gridY;
+	}
+
+	/**
+	 * Returns the x distance between neighboring pixels in the complex plane.
+	 */
+	public double getStepX() {
+		return stepX;
+	}
+
+	/**
+	 * Returns the y distance between neighboring pixels in the complex plane.
+	 */
+	public double getStepY() {
+		return stepY;
+	}
+
+	/**
+	 * Converts the x pixel value to coordinates.
+	 * @param x - The untransformed x value of the pixel.
+	 * @return The transformed x coordinate.
+	 */
+	public double xCoord(int x) {
+		if(aligned) {
+			return stepX * (gridX + x);
+		}
+		return stepX * (originX + x) + centerX;
+	}
+
+	/**
+	 * Converts the y pixel value to coordinates.
+	 * @param y - The untransformed y value of the pixel.
+	 * @return The transformed y coordinate.
+	 */
+	public double yCoord(int y) {
+		if(aligned) {
+			return stepY * (gridY + y);
+		}
+		return stepY * (originY + y) + centerY;
+	}
+
+	/**
+	 * Returns the x distance of the x pixel value from the center.
+	 * Exact however deep the view is, unlike xCoord.
+	 * @param x - The untransformed x value of the pixel.
+	 * @return The offset of the pixel's x coordinate from the center's.
+	 */
+	public double xOffset(int x) {
+		return stepX * (originX + x);
+	}
+
+	/**
+	 * Returns the y distance of the y pixel value from the center.
+	 * @param y - The untransformed y value of the pixel.
+	 * @return The offset of the pixel's y coordinate from the center's.
+	 */
+	public double yOffset(int y) {
+		return stepY * (originY + y);
+	}
+
+	/**
+	 * Returns the x coordinate of the center in full precision.
+	 */
+	public BigDecimal getPreciseCenterX() {
+		return preciseX == null ? new BigDecimal(centerX) : preciseX;
+	}
+
+	/**
+	 * Returns the y coordinate of the center in full precision.
+	 */
+	public BigDecimal getPreciseCenterY() {
+		return preciseY == null ? new BigDecimal(centerY) : preciseY;
+	}
+
+	/**
+	 * Returns the distance between neighboring pixels in the complex plane.
+	 * Uses the smaller of the x and y spacing.
+	 * @return The size of a pixel.
+	 */
+	public double pixelSize() {
+		return Math.min(Math.abs(stepX), Math.abs(stepY));
+	}
+
+	public String toString() {
+		return String.format("Viewport(%dx%d, center=(%s, %s), scale=(%s, %s))",
+				width, height, centerX, centerY, scaleX, scaleY);
+	}
+}
+
+/**
+ * Receives a callback each time the Renderer finishes a tile.
+ * Called from the worker thread which rendered the tile.
+ */
+interface TileListener {
+
+	public void tileFinished(int x, int y, int width, int height);
+
+	/**
+	 * Called from the rendering thread once every tile of a pass is done.
+	 * Renders which are not progressive have a single pass.
+	 * @param step - The block size of the pass, 1 for the final pass.
+	 */
+	public default void passFinished(int step) { }
+}
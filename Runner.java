@@ -1,5 +1,3 @@
-import static java.lang.System.out;
-
 import java.awt.FlowLayout;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
@@ -7,12 +5,22 @@ import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 import javax.imageio.ImageIO;
+import javax.management.JMException;
 import javax.swing.ImageIcon;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
@@ -24,7 +32,6 @@ import javax.swing.JOptionPane;
 
 /*
  * TODO list:
- * implement a BigComplexDecimal
  * find cool gradients
  * find cool julia set values
  * find cool equations and sets
@@ -36,31 +43,47 @@ import javax.swing.JOptionPane;
  */
 public class Runner {
 	
-	private static boolean logOutputEnabled = true;
-	private static String lastMessage = null;
-	private static int lastMessageCount = 0;
 	private static int imageCount = 0;
 	
+	/**
+	 * The memory budget of the tile cache the interactive viewer uses
+	 * unless -cacheMB says otherwise.
+	 */
+	public static final long DEFAULT_CACHE_MEGABYTES = 256;
+	/**
+	 * How many pixels of a deep render -verify iterates in full precision.
+	 */
+	public static final int VERIFY_SAMPLES = 256;
+	
 	private String path;
 	private Pair<Integer, Integer> dimensions;
 	private Pair<Double, Double> center;
+	private BigDecimal preciseCenterX;
+	private BigDecimal preciseCenterY;
 	private Pair<Double, Double> scale;
 	private int maxIterations;
 	private double zoomLevel;
 	
 	private Gradient gradient;
 	private Fractal fractal;
+	private Renderer renderer;
 	
 	private JFrame frame;
 	private JPanel panel;
 	private JLabel label;
 	private ImageIcon imageIcon;
 	private BufferedImage image;
+	private BufferedImage backImage;
 	private JMenuBar menuBar;
 	
-	private boolean isLocked;
-	private boolean shouldCreateFractal;
-	private final boolean freeExplore = true;
+	private Frame lastFrame;
+	private ExecutorService renderExecutor;
+	private AtomicInteger renderGeneration;
+	private boolean verify;
+	private volatile boolean histogramColoring;
+	private volatile boolean basinColoring;
+	private int workers;
+	private int port;
 	
 	/**
 	 * Constructor for the main class. Has different values for the dimensions of
@@ -87,15 +110,23 @@ public class Runner {
 		this.path = path;
 		dimensions = new Pair<>(width, height);
 		center = new Pair<>(centerX, centerY);
+		preciseCenterX = new BigDecimal(centerX);
+		preciseCenterY = new BigDecimal(centerY);
 		scale = new Pair<>(scaleX, scaleY);
 		this.maxIterations = maxIterations;
 		this.zoomLevel = zoomLevel;
 		
 		this.gradient = gradient;
 		this.fractal = fractal;
+		renderer = new Renderer();
 		
-		isLocked = false;
-		shouldCreateFractal = false;
+		renderExecutor = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "Render");
+			t.setDaemon(true);
+			return t;
+		});
+		renderGeneration = new AtomicInteger();
+		workers = -1;
 	}
 	
 	/**
@@ -105,6 +136,7 @@ public class Runner {
 	 */
 	public void initialize() {
 		image = new BufferedImage(dimensions.x, dimensions.y, BufferedImage.TYPE_INT_RGB);
+		backImage = new BufferedImage(dimensions.x, dimensions.y, BufferedImage.TYPE_INT_RGB);
 		frame = new JFrame("Fractals");
 		frame.setSize(dimensions.x, dimensions.y);
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -131,6 +163,44 @@ public class Runner {
 		
 		menuBar.add(file);
 		
+		JMenu colors = new JMenu("Gradient");
+		
+		JMenuItem colorsWikipedia = new JMenuItem("Wikipedia");
+		colorsWikipedia.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				setGradient(SimpleLinearGradient.wikipedia(gradient.getSize()));
+			}
+		});
+		colors.add(colorsWikipedia);
+		
+		JMenuItem colorsRainbow = new JMenuItem("Rainbow");
+		colorsRainbow.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				setGradient(new DefaultGradient(gradient.getSize()));
+			}
+		});
+		colors.add(colorsRainbow);
+		
+		colors.addSeparator();
+		
+		JCheckBoxMenuItem colorsHistogram = new JCheckBoxMenuItem("Histogram equalization", histogramColoring);
+		colorsHistogram.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				setHistogramColoring(colorsHistogram.isSelected());
+			}
+		});
+		colors.add(colorsHistogram);
+		
+		JCheckBoxMenuItem colorsBasins = new JCheckBoxMenuItem("Color by basin", basinColoring);
+		colorsBasins.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				setBasinColoring(colorsBasins.isSelected());
+			}
+		});
+		colors.add(colorsBasins);
+		
+		menuBar.add(colors);
+		
 		frame.setJMenuBar(menuBar);
 		
 		frame.pack();
@@ -139,22 +209,16 @@ public class Runner {
 
 			@Override
 			public void mouseClicked(MouseEvent e) {
-				if(isLocked) {
-					logf("Locked!");
-					return;
-				}
-				double x = xCoord(e.getX());
-				double y = yCoord(e.getY());
-				setCenter(x, y);
+				//offsets from the center stay exact at depths where xCoord and yCoord do not
+				BigDecimal x = preciseCenterX.add(new BigDecimal(xOffset(e.getX())));
+				BigDecimal y = preciseCenterY.add(new BigDecimal(yOffset(e.getY())));
 				if(e.isMetaDown()) {
 					setScale(scale.x * zoomLevel, scale.y * zoomLevel);
 				} else {
 					setScale(scale.x / zoomLevel, scale.y / zoomLevel);
 				}
-				shouldCreateFractal = true;
-				synchronized(fractal) {
-					fractal.notify();
-				}
+				setCenter(x.round(getMathContext()), y.round(getMathContext()));
+				createFractal();
 			}
 
 			@Override
@@ -172,41 +236,80 @@ public class Runner {
 		});
 		
 		createFractal();
-		while(freeExplore) {
-			try {
-				synchronized(fractal) {
-					fractal.wait();
-				}
-			} catch(InterruptedException e) {
-				
-			}
-			if(shouldCreateFractal) {
-				shouldCreateFractal = false;
-				createFractal();
-			}
-		}
 	}
 	
 	/**
 	 * The main method. Starts the program.
-	 * @param args - No use.
+	 * Opens the interactive viewer, unless -output is given, in which case
+	 * the fractal is rendered to that file without any windows and the
+	 * program exits.
+	 * @param args - Options such as -dimensions w h, -center x y, -scale x y,
+	 * -maxIterations n, -fractal spec (see Fractal.parse), -formula function,
+	 * -bailout condition and -start expression (see FormulaFractal), -threads n,
+	 * -noPerturbation, -noDoubleDouble, -noVector, -compareVector,
+	 * -mode name, -cacheMB n, -histogram, -basins, -metrics, -output file and
+	 * -zoom scale frames, which renders a zoom into the center down to a view
+	 * scale wide through an exponential map, into files named by formatting
+	 * -output with the frame number, e.g. -output zoom%04d.png.
+	 * -workers n renders -output through a TileCoordinator with n local
+	 * TileWorker processes, and -port p lets workers on other hosts join.
+	 * -metrics counts what renders do, logs it after each render, and
+	 * publishes it over JMX as RenderMetrics.
 	 */
-	public static void main(String[] args) throws InvalidFractalException {
+	public static void main(String[] args) {
 		String path = "C:/Users/Blake/Pictures/mandelbrot";
 		int width = 680;
 		int height = 680;
-		double centerX = 0;
-		double centerY = 0;
+		BigDecimal centerX = BigDecimal.ZERO;
+		BigDecimal centerY = BigDecimal.ZERO;
 		double scaleX = 4;
 		double scaleY = 4;
 		int maxColors = 64;
 		int maxIterations = 256;
 		double zoomLevel = 4;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int tileSize = Renderer.DEFAULT_TILE_SIZE;
+		boolean periodicityChecking = true;
+		boolean perturbation = true;
+		boolean doubleDoubles = true;
+		boolean vectorized = true;
+		boolean compareVector = false;
+		RenderMode mode = null;
+		boolean verify = false;
+		String output = null;
+		String fractalSpec = "mandelbrot";
+		String formula = null;
+		String bailout = FormulaFractal.DEFAULT_BAILOUT;
+		String start = FormulaFractal.DEFAULT_START;
+		long cacheMegabytes = -1;
+		boolean histogramColoring = false;
+		boolean basinColoring = false;
+		boolean metrics = false;
+		double zoomScale = 0;
+		int zoomFrames = 0;
+		int workers = -1;
+		int port = 0;
 		
 		for(int i=0;i<args.length;i++) {
 			switch(args[i]) {
 			case "-path":
 				path = args[++i];
+				break;
+			case "-output":
+				output = args[++i];
+				break;
+			case "-fractal":
+				fractalSpec = args[++i];
+				break;
+			case "-formula":
+				formula = args[++i];
+				break;
+			case "-bailout":
+				bailout = args[++i];
+				break;
+			case "-start":
+				start = args[++i];
+				break;
 			case "-width":
 				width = Integer.parseInt(args[++i]);
 				break;
@@ -218,8 +321,8 @@ public class Runner {
 				height = Integer.parseInt(args[++i]);
 				break;
 			case "-center":
-				centerX = Double.parseDouble(args[++i]);
-				centerY = Double.parseDouble(args[++i]);
+				centerX = new BigDecimal(args[++i]);
+				centerY = new BigDecimal(args[++i]);
 				break;
 			case "-scale":
 				scaleX = Double.parseDouble(args[++i]);
@@ -232,37 +335,345 @@ public class Runner {
 			case "-maxIters":
 				maxIterations = Integer.parseInt(args[++i]);
 				break;
+			case "-threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "-tileSize":
+				tileSize = Integer.parseInt(args[++i]);
+				break;
+			case "-noPeriodicity":
+				periodicityChecking = false;
+				break;
+			case "-noPerturbation":
+				perturbation = false;
+				break;
+			case "-noDoubleDouble":
+				doubleDoubles = false;
+				break;
+			case "-noVector":
+				vectorized = false;
+				break;
+			case "-compareVector":
+				compareVector = true;
+				break;
+			case "-mode":
+				try {
+					mode = RenderMode.valueOf(args[++i].toUpperCase());
+				} catch(IllegalArgumentException e) {
+					Log.error("Unknown mode: %s, expected one of %s", args[i],
+							Arrays.toString(RenderMode.values()).toLowerCase());
+					return;
+				}
+				break;
+			case "-verify":
+				verify = true;
+				break;
+			case "-cacheMB":
+				cacheMegabytes = Long.parseLong(args[++i]);
+				break;
+			case "-histogram":
+				histogramColoring = true;
+				break;
+			case "-basins":
+				basinColoring = true;
+				break;
+			case "-metrics":
+				metrics = true;
+				break;
+			case "-workers":
+				workers = Integer.parseInt(args[++i]);
+				break;
+			case "-port":
+				port = Integer.parseInt(args[++i]);
+				break;
+			case "-zoom":
+				zoomScale = Double.parseDouble(args[++i]);
+				zoomFrames = Integer.parseInt(args[++i]);
+				break;
 			default:
-				logf("Unknown argument: %s", args[i]);
+				Log.error("Unknown argument: %s", args[i]);
 				return;
 			}
 		}
 		
-		DefaultGradient gradient = new DefaultGradient(maxColors);
-		Fractal<CDouble> fractal = new Mandelbrot();
+		if(output != null) {
+			System.setProperty("java.awt.headless", "true");
+		}
 		
-		HSB[] wikipediaColors = {
-			HSB.fromRgb(0, 7, 100),
-			HSB.fromRgb(32, 107, 203),
-			HSB.fromRgb(237, 255, 255),
-			HSB.fromRgb(255, 170, 0),
-			HSB.fromRgb(0, 2, 0)
-		};
-		Gradient g = new SimpleLinearGradient(maxColors, wikipediaColors);
-		log(g.toString());
+		Fractal<CDouble> fractal;
+		try {
+			fractal = formula == null ? Fractal.parse(fractalSpec)
+					: new FormulaFractal(formula, bailout, start);
+		} catch(InvalidFractalException e) {
+			Log.error("%s", e.getMessage());
+			return;
+		}
+		if(fractal instanceof FormulaFractal && fractal.getKernel() == null) {
+			log("Interpreting the formula: " + ((FormulaFractal) fractal).getCompileError());
+		}
+		
+		Gradient g = SimpleLinearGradient.wikipedia(maxColors);
+		if(output == null) {
+			log(g.toString());
+		}
 		
 		Runner test = new Runner(
 			path,
 			width, height,
-			centerX, centerY,
+			centerX.doubleValue(), centerY.doubleValue(),
 			scaleX, scaleY,
 			maxIterations,
 			zoomLevel,
 			g,
 			fractal);
+		test.setThreads(threads);
+		test.setTileSize(tileSize);
+		test.setCenter(centerX, centerY);
+		test.setPeriodicityChecking(periodicityChecking);
+		test.setPerturbation(perturbation);
+		test.setDoubleDoubles(doubleDoubles);
+		test.setVectorized(vectorized);
+		test.setVerify(verify);
+		test.setHistogramColoring(histogramColoring);
+		test.setBasinColoring(basinColoring);
+		if(metrics) {
+			RenderMetrics renderMetrics = new RenderMetrics();
+			try {
+				renderMetrics.register();
+			} catch(JMException e) {
+				Log.warn("Metrics not published over JMX: %s", e);
+			}
+			test.setMetrics(renderMetrics);
+		}
+		if(cacheMegabytes > 0 || cacheMegabytes == -1 && output == null) {
+			test.setCache(new TileCache((cacheMegabytes == -1 ? DEFAULT_CACHE_MEGABYTES : cacheMegabytes) << 20));
+		}
+		if(workers >= 0) {
+			test.setDistributed(workers, port);
+		}
+		if(output != null) {
+			test.setMode(mode == null ? RenderMode.TILED : mode);
+			try {
+				if(compareVector) {
+					test.compareVector();
+				}
+				if(zoomFrames > 0) {
+					test.renderZoom(output, zoomScale, zoomFrames);
+				} else {
+					test.renderToFile(new File(output));
+				}
+			} catch(IOException e) {
+				Log.error("%s", e.getMessage());
+				Log.error("File %s could not be saved.", output);
+				System.exit(1);
+			}
+			return;
+		}
+		test.setMode(mode == null ? RenderMode.PROGRESSIVE : mode);
 		test.initialize();
+	}
+	
+	/**
+	 * Renders the current view on the calling thread and writes it to a file,
+	 * without creating any windows. The format is taken from the file's
+	 * extension and defaults to png.
+	 * @param file - The file to write the image to.
+	 * @throws IOException If the image could not be written.
+	 */
+	public void renderToFile(File file) throws IOException {
+		long start = System.nanoTime();
+		Viewport view = getViewport();
+		BufferedImage image = new BufferedImage(view.width, view.height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = getPixels(image);
+		Frame frame = new Frame(view.width, view.height);
+		Gradient gradient = this.gradient;
+		CDouble[] roots = basinColoring ? fractal.getRoots() : null;
+		boolean histogramColoring = this.histogramColoring && roots == null;
+		TileListener listener = (x0, y0, w, h) -> {
+			if(roots != null) {
+				frame.colorBasins(gradient, roots.length, pixels, x0, y0, w, h);
+			} else if(!histogramColoring) {
+				frame.color(gradient, pixels, x0, y0, w, h);
+			}
+		};
+		if(workers >= 0) {
+			TileCoordinator coordinator = new TileCoordinator(fractal, view, maxIterations);
+			coordinator.setPort(port);
+			coordinator.setOptions(renderer.isPeriodicityChecking(), renderer.isPerturbation(),
+					renderer.isDoubleDoubles());
+			coordinator.render(frame, workers, listener);
+		} else {
+			renderer.render(fractal, view, maxIterations, frame, listener);
+		}
+		if(histogramColoring) {
+			renderer.equalize(frame, gradient, pixels);
+		}
+		long rendered = System.nanoTime();
 		
+		write(image, file);
+		logf("Rendered %s %dx%d in %dms, wrote %s in %dms%n",
+				fractal, view.width, view.height, (rendered - start) / 1000000,
+				file, (System.nanoTime() - rendered) / 1000000);
+		//distributed renders are counted by the workers' renderers
+		if(workers < 0) {
+			if(renderer.getLastEngine() != Engine.DOUBLE) {
+				logf("Engine: %s%n", getEngineDescription());
+			}
+			logMetrics();
+		}
+		if(verify) {
+			verify(fractal, view, frame);
+		}
+	}
+	
+	/**
+	 * Renders a zoom from the current view into its center, one file per
+	 * frame, without creating any windows. The whole zoom is rendered once
+	 * as the strip of an ExponentialMap, and each frame is projected from
+	 * the strip and colored, so frames cost milliseconds each. The scale
+	 * shrinks by the same factor from each frame to the next.
+	 * @param pattern - The name of the files, formatted with the frame number.
+	 * @param endScaleX - The width of the last frame in the complex plane.
+	 * @param frames - The number of frames. At least 2.
+	 * @throws IOException If a frame could not be written.
+	 */
+	public void renderZoom(String pattern, double endScaleX, int frames) throws IOException {
+		if(frames < 2) {
+			throw new IllegalArgumentException("A zoom needs at least 2 frames: " + frames);
+		}
+		long start = System.nanoTime();
+		Viewport view = getViewport();
+		ExponentialMap map = ExponentialMap.forZoom(view, endScaleX);
+		Frame strip = new Frame(map.width, map.height);
+		renderer.renderExponentialMap(fractal, map, maxIterations, strip, null);
+		long rendered = System.nanoTime();
+		logf("Rendered %s %s in %dms%n", fractal, map, (rendered - start) / 1000000);
 		
+		BufferedImage image = new BufferedImage(view.width, view.height, BufferedImage.TYPE_INT_RGB);
+		int[] pixels = getPixels(image);
+		Frame frame = new Frame(view.width, view.height);
+		CDouble[] roots = basinColoring ? fractal.getRoots() : null;
+		for(int i=0;i<frames;i++) {
+			double zoom = Math.pow(endScaleX / view.scaleX, (double) i / (frames - 1));
+			map.project(strip, view.scaleX * zoom, view.scaleY * zoom, frame);
+			if(roots != null) {
+				frame.colorBasins(gradient, roots.length, pixels, 0, 0, frame.width, frame.height);
+			} else if(histogramColoring) {
+				renderer.equalize(frame, gradient, pixels);
+			} else {
+				renderer.recolor(frame, gradient, pixels);
+			}
+			write(image, new File(String.format(pattern, i)));
+		}
+		logf("Wrote %d frames in %dms%n", frames, (System.nanoTime() - rendered) / 1000000);
+	}
+	
+	/**
+	 * Writes an image to a file. The format is taken from the file's
+	 * extension and defaults to png.
+	 */
+	private static void write(BufferedImage image, File file) throws IOException {
+		String name = file.getName();
+		String format = name.lastIndexOf('.') == -1 ? "png" : name.substring(name.lastIndexOf('.') + 1);
+		if(!ImageIO.write(image, format, file)) {
+			throw new IOException("No writer for format " + format);
+		}
+	}
+	
+	/**
+	 * Logs the throughput of the last render and the totals so far,
+	 * if the renderer has metrics.
+	 */
+	private void logMetrics() {
+		RenderMetrics metrics = renderer.getMetrics();
+		if(metrics != null && metrics.isEnabled()) {
+			logf("Last render: %.1fms, %.1f Mpix/s, %.3f Giter/s%nMetrics: %s%n",
+					metrics.getLastRenderMillis(),
+					metrics.getLastMegapixelsPerSecond(),
+					metrics.getLastGigaiterationsPerSecond(),
+					metrics);
+		}
+	}
+	
+	/**
+	 * Logs how many pixels of a frame differ from a full render. Deep
+	 * renders are checked against a sample of pixels iterated in full
+	 * precision instead, since iterating all of them would take hours.
+	 */
+	private void verify(Fractal<?> fractal, Viewport view, Frame frame) {
+		Engine engine = renderer.getLastEngine();
+		if(engine == Engine.DOUBLE_DOUBLE || engine == Engine.PERTURBATION) {
+			try {
+				logf("Pixels differing from a full precision render: %d of %d%n",
+						renderer.verifyPrecise(fractal, view, maxIterations, frame, VERIFY_SAMPLES),
+						VERIFY_SAMPLES);
+				return;
+			} catch(IllegalArgumentException e) {
+				Log.warn("%s", e.getMessage());
+			}
+		}
+		logf("Pixels differing from a full render: %d%n",
+				renderer.verify(fractal, view, maxIterations, frame));
+	}
+	
+	/**
+	 * Renders the current view once with the fractal's DoubleKernel and once
+	 * with its VectorKernel, in tiled mode without the cache, and logs the
+	 * throughput of both side by side in millions of iterations per second.
+	 */
+	public void compareVector() {
+		Viewport view = getViewport();
+		VectorKernel vector = fractal.getVectorKernel();
+		if(vector == null) {
+			logf("No vector kernel for %s, is jdk.incubator.vector added?%n", fractal);
+			return;
+		}
+		RenderMode mode = renderer.getMode();
+		TileCache cache = renderer.getCache();
+		boolean vectorized = renderer.isVectorized();
+		renderer.setMode(RenderMode.TILED);
+		renderer.setCache(null);
+		Frame scalar = new Frame(view.width, view.height);
+		Frame vectors = new Frame(view.width, view.height);
+		try {
+			//the first of each warms up the JIT
+			renderer.setVectorized(false);
+			renderer.render(fractal, view, maxIterations, scalar, null);
+			long start = System.nanoTime();
+			renderer.render(fractal, view, maxIterations, scalar, null);
+			long scalarTime = System.nanoTime() - start;
+			renderer.setVectorized(true);
+			renderer.render(fractal, view, maxIterations, vectors, null);
+			start = System.nanoTime();
+			renderer.render(fractal, view, maxIterations, vectors, null);
+			long vectorTime = System.nanoTime() - start;
+			
+			long iterations = 0;
+			int differences = 0;
+			for(int i=0;i<scalar.iterations.length;i++) {
+				iterations += scalar.iterations[i] == -1 ? maxIterations : scalar.iterations[i];
+				if(scalar.iterations[i] != vectors.iterations[i]) {
+					differences++;
+				}
+			}
+			logf("Scalar: %.1f Miter/s in %dms, Vector (%d lanes): %.1f Miter/s in %dms, %.2fx, %d pixels differ%n",
+					iterations * 1e3 / scalarTime, scalarTime / 1000000,
+					vector.getLanes(), iterations * 1e3 / vectorTime, vectorTime / 1000000,
+					(double) scalarTime / vectorTime, differences);
+		} finally {
+			renderer.setMode(mode);
+			renderer.setCache(cache);
+			renderer.setVectorized(vectorized);
+		}
+	}
+	
+	/**
+	 * Describes the arithmetic of the last render, with the counts of
+	 * references and glitches when it was rendered by perturbation.
+	 */
+	private String getEngineDescription() {
+		Perturbation perturbation = renderer.getLastPerturbation();
+		return perturbation == null ? String.valueOf(renderer.getLastEngine()) : perturbation.toString();
 	}
 	
 	/**
@@ -274,23 +685,12 @@ public class Runner {
 	}
 	
 	/**
-	 * Keeps a record of system messages. Prints it on screen and (later)
-	 * writes to an output log. Displays a number indicating how many times
-	 * the message has been displayed to save on space.
+	 * Keeps a record of system messages at the INFO level of the Log, which
+	 * prints them on another thread and folds repeated messages.
 	 * @param message - The message to log.
 	 */
 	public static void log(String message) {
-		if(!logOutputEnabled) {
-			return;
-		}
-		if(message.equals(lastMessage)) {
-			lastMessageCount += 1;
-		} else {
-			out.println("\t" + lastMessageCount);
-			out.print(message);
-			lastMessage = message;
-			lastMessageCount = 1;
-		}
+		Log.info("%s", message);
 	}
 	
 	/**
@@ -307,7 +707,7 @@ public class Runner {
 	 * @param args - The arguments for the format.
 	 */
 	public static void logf(String format, Object... args) {
-		log(String.format(format, args));
+		Log.info(format, args);
 	}
 	
 	/**
@@ -322,55 +722,158 @@ public class Runner {
 			ImageIO.write(image, "png", file);
 			log("Saved image " + url + " successfully.");
 		} catch(IOException e) {
-			log(e.getMessage());
-			log("File " + url + " could not be saved.");
+			Log.error("%s", e.getMessage());
+			Log.error("File %s could not be saved.", url);
 		}
 	}
 	
 	/**
-	 * Draws the fractal onto the image.
+	 * Starts drawing the fractal for the current view on the render thread
+	 * and returns right away. A render which is still running is cancelled,
+	 * so the latest view is always the one drawn.
 	 */
 	public void createFractal() {
-		if(isLocked) {
-			return;
-		}
-		isLocked = true;
-		long start = System.currentTimeMillis();
-		
-		for(int y=0;y<dimensions.y;y++) {
-			for(int x=0;x<dimensions.x;x++) {
-				image.setRGB(x, y, RGB.toRgbInt(255, 255, 255));
+		int generation = renderGeneration.incrementAndGet();
+		Viewport view = getViewport();
+		Fractal<?> fractal = this.fractal;
+		Gradient gradient = this.gradient;
+		int maxIterations = this.maxIterations;
+		renderer.cancel();
+		renderExecutor.execute(() -> {
+			if(generation == renderGeneration.get()) {
+				createFractal(generation, view, fractal, gradient, maxIterations);
 			}
-		}
+		});
+	}
+	
+	/**
+	 * Draws the fractal onto the back image, and swaps it with the image on
+	 * screen after every pass. Runs on the render thread.
+	 */
+	private void createFractal(
+			int generation,
+			Viewport view,
+			Fractal<?> fractal,
+			Gradient gradient,
+			int maxIterations) {
+		long start = System.nanoTime();
 		
-		for(int y=0;y<dimensions.y;y++) {
-			redraw();
-			double newY = yCoord(y);
-			for(int x=0;x<dimensions.x;x++) {
-				double newX = xCoord(x);
-				int i = fractal.iterate(newX, newY, maxIterations);
-				if(i == -1) {
-					image.setRGB(x, y, 0);
-				} else {
-					image.setRGB(x, y, gradient.get(i));
+		Frame result = new Frame(view.width, view.height);
+		CDouble[] roots = basinColoring ? fractal.getRoots() : null;
+		boolean histogramColoring = this.histogramColoring && roots == null;
+		boolean finished = renderer.render(fractal, view, maxIterations, result,
+				new TileListener() {
+			
+			@Override
+			public void tileFinished(int x0, int y0, int w, int h) {
+				//a newer view was requested before this render registered with the renderer
+				if(generation != renderGeneration.get()) {
+					renderer.cancel();
+					return;
+				}
+				if(roots != null) {
+					result.colorBasins(gradient, roots.length, getPixels(backImage), x0, y0, w, h);
+				} else if(!histogramColoring) {
+					result.color(gradient, getPixels(backImage), x0, y0, w, h);
+				}
+			}
+			
+			@Override
+			public void passFinished(int step) {
+				//the histogram needs every pixel, so equalized colors wait for the end of each pass
+				if(histogramColoring) {
+					renderer.equalize(result, gradient, getPixels(backImage));
 				}
+				swapImages();
 			}
+		});
+		if(!finished) {
+			logf("Render cancelled after %dms%n", (System.nanoTime() - start) / 1000000);
+			return;
 		}
-		redraw();
+		lastFrame = result;
 		logf("Dimensions:(%d, %d) (total=%d)%n"
-				+ "Center:(%f, %f)%n"
-				+ "Scale:(%f, %f)%n"
+				+ "Center:(%s, %s)%n"
+				+ "Scale:(%g, %g)%n"
 				+ "Max Iterations: %d%n"
+				+ "Threads: %d, Tile size: %d, Mode: %s%n"
+				+ "Pixels iterated: %d%n"
+				+ "Cache: %s%n"
+				+ "Engine: %s%n"
 				+ "Time elapsed: %dms%n",
-				dimensions.x, dimensions.y, dimensions.x * dimensions.y,
-				center.x, center.y,
-				scale.x, scale.y,
+				view.width, view.height, view.width * view.height,
+				view.getPreciseCenterX(), view.getPreciseCenterY(),
+				view.scaleX, view.scaleY,
 				maxIterations,
-				System.currentTimeMillis() - start);
-		isLocked = false;
+				renderer.getThreads(), renderer.getTileSize(), renderer.getMode(),
+				renderer.getLastPixelsIterated(),
+				renderer.getCache(),
+				getEngineDescription(),
+				(System.nanoTime() - start) / 1000000);
+		logMetrics();
+		if(verify) {
+			verify(fractal, view, result);
+		}
 		Toolkit.getDefaultToolkit().beep();
 	}
 	
+	/**
+	 * Colors the last finished frame again with the current gradient and puts
+	 * it on screen, without iterating. Runs on the render thread, after any
+	 * render which was already queued.
+	 */
+	private void recolor() {
+		renderExecutor.execute(() -> {
+			Frame frame = lastFrame;
+			if(frame == null || frame.width != backImage.getWidth() || frame.height != backImage.getHeight()) {
+				return;
+			}
+			long start = System.nanoTime();
+			CDouble[] roots = basinColoring ? fractal.getRoots() : null;
+			if(roots != null) {
+				frame.colorBasins(gradient, roots.length, getPixels(backImage), 0, 0, frame.width, frame.height);
+			} else if(histogramColoring) {
+				renderer.equalize(frame, gradient, getPixels(backImage));
+			} else {
+				renderer.recolor(frame, gradient, getPixels(backImage));
+			}
+			swapImages();
+			logf("Recolored in %dms%n", (System.nanoTime() - start) / 1000000);
+		});
+	}
+	
+	/**
+	 * Returns the array backing a TYPE_INT_RGB image, so pixels can be written
+	 * as packed RGB ints without going through setRGB's color model
+	 * conversion and bounds checks for each pixel.
+	 * @param image - An image created with BufferedImage.TYPE_INT_RGB.
+	 * @return The pixels of the image, row by row.
+	 */
+	private static int[] getPixels(BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+	
+	/**
+	 * Puts the back image on screen and takes the old one as the new back image.
+	 * The swap happens on the event dispatch thread, and the render thread
+	 * waits for it so it never draws into the image being painted.
+	 */
+	private void swapImages() {
+		try {
+			SwingUtilities.invokeAndWait(() -> {
+				BufferedImage front = backImage;
+				backImage = image;
+				image = front;
+				imageIcon.setImage(image);
+				label.repaint();
+			});
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch(InvocationTargetException e) {
+			Log.error("%s", e.getCause());
+		}
+	}
+	
 	/**
 	 * Converts the x pixel value to coordinates. Makes code easier to read.
 	 * @param x - The untransformed x value of the pixel.
@@ -389,16 +892,58 @@ public class Runner {
 		return scale.y / dimensions.y * (y - dimensions.y / 2) + center.y;
 	}
 	
+	/**
+	 * Returns the x distance of the x pixel value from the center.
+	 * @param x - The untransformed x value of the pixel.
+	 * @return The offset of the pixel's x coordinate from the center's.
+	 */
+	public double xOffset(int x) {
+		return scale.x / dimensions.x * (x - dimensions.x / 2);
+	}
+	
+	/**
+	 * Returns the y distance of the y pixel value from the center.
+	 * @param y - The untransformed y value of the pixel.
+	 * @return The offset of the pixel's y coordinate from the center's.
+	 */
+	public double yOffset(int y) {
+		return scale.y / dimensions.y * (y - dimensions.y / 2);
+	}
+	
+	/**
+	 * Returns the precision needed for the center at the current scale
+	 * and width. See BigComplexDecimal.contextFor.
+	 * @return A MathContext with enough digits for the current view.
+	 */
+	public MathContext getMathContext() {
+		return BigComplexDecimal.contextFor(preciseCenterX, preciseCenterY, getViewport().pixelSize());
+	}
+	
+	/**
+	 * Returns the current view as a Viewport for the Renderer.
+	 * @return A snapshot of the dimensions, center, and scale.
+	 */
+	public Viewport getViewport() {
+		return new Viewport(
+				dimensions.x, dimensions.y,
+				preciseCenterX, preciseCenterY,
+				scale.x, scale.y);
+	}
+	
 	/**
 	 * Sets the dimensions of the image.
 	 * @param width - The new width of the image in pixels.
 	 * @param height - The new height of the image in pixels.
 	 */
 	public void setDimensions(int width, int height) {
+		renderer.cancel();
 		dimensions.x = width;
 		dimensions.y = height;
-		image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-		imageIcon.setImage(image);
+		renderExecutor.execute(() -> {
+			backImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			imageIcon.setImage(image);
+		});
 	}
 	
 	/**
@@ -407,8 +952,20 @@ public class Runner {
 	 * @param y - The new transformed y coordinate of the center.
 	 */
 	public void setCenter(double x, double y) {
-		center.x = x;
-		center.y = y;
+		setCenter(new BigDecimal(x), new BigDecimal(y));
+	}
+	
+	/**
+	 * Sets the center of the image in more precision than a double holds,
+	 * for deep zooms.
+	 * @param x - The new transformed x coordinate of the center.
+	 * @param y - The new transformed y coordinate of the center.
+	 */
+	public void setCenter(BigDecimal x, BigDecimal y) {
+		preciseCenterX = x;
+		preciseCenterY = y;
+		center.x = x.doubleValue();
+		center.y = y.doubleValue();
 	}
 	
 	/**
@@ -435,6 +992,34 @@ public class Runner {
 	 */
 	public void setGradient(Gradient g) {
 		gradient = g;
+		if(imageIcon != null) {
+			recolor();
+		}
+	}
+	
+	/**
+	 * Sets whether fractals with roots, such as Newton, are colored by the
+	 * root each pixel converged to. Takes precedence over histogram
+	 * equalization for those fractals. Recolors the picture.
+	 * @param basinColoring - Whether to color by basin.
+	 */
+	public void setBasinColoring(boolean basinColoring) {
+		this.basinColoring = basinColoring;
+		if(imageIcon != null) {
+			recolor();
+		}
+	}
+	
+	/**
+	 * Sets whether colors are picked by histogram equalization instead of
+	 * cycling through the gradient by iterations. Recolors the picture.
+	 * @param histogramColoring - Whether to use histogram equalization.
+	 */
+	public void setHistogramColoring(boolean histogramColoring) {
+		this.histogramColoring = histogramColoring;
+		if(imageIcon != null) {
+			recolor();
+		}
 	}
 	
 	/**
@@ -445,6 +1030,100 @@ public class Runner {
 		fractal = f;
 	}
 	
+	/**
+	 * Sets the number of threads used to render the fractal.
+	 * @param threads - The new number of threads.
+	 */
+	public void setThreads(int threads) {
+		renderer.setThreads(threads);
+	}
+	
+	/**
+	 * Sets the size of the square tiles the image is split into.
+	 * @param tileSize - The new tile size in pixels.
+	 */
+	public void setTileSize(int tileSize) {
+		renderer.setTileSize(tileSize);
+	}
+	
+	/**
+	 * Turns checking for periodic orbits on or off.
+	 * @param periodicityChecking - Whether to stop periodic orbits early.
+	 */
+	public void setPeriodicityChecking(boolean periodicityChecking) {
+		renderer.setPeriodicityChecking(periodicityChecking);
+	}
+	
+	/**
+	 * Turns rendering views too deep for doubles by perturbation on or off.
+	 * @param perturbation - Whether to use perturbation for deep views.
+	 */
+	public void setPerturbation(boolean perturbation) {
+		renderer.setPerturbation(perturbation);
+	}
+	
+	/**
+	 * Turns rendering views too deep for doubles in double-double precision
+	 * on or off. Perturbation takes over from double-doubles for the deepest views.
+	 * @param doubleDoubles - Whether to use double-doubles for deep views.
+	 */
+	public void setDoubleDoubles(boolean doubleDoubles) {
+		renderer.setDoubleDoubles(doubleDoubles);
+	}
+	
+	/**
+	 * Turns iterating rows of pixels with SIMD vector kernels on or off.
+	 * They are only used in tiled mode and when the Vector API is available.
+	 * @param vectorized - Whether to use vector kernels.
+	 */
+	public void setVectorized(boolean vectorized) {
+		renderer.setVectorized(vectorized);
+	}
+	
+	/**
+	 * Sets how the Renderer computes the pixels of each tile.
+	 * @param mode - The new render mode.
+	 */
+	public void setMode(RenderMode mode) {
+		renderer.setMode(mode);
+	}
+	
+	/**
+	 * Sets the cache the Renderer keeps rendered tiles in, so going back
+	 * to a region which was already rendered does not iterate it again.
+	 * @param cache - The new cache, or null to render without one.
+	 */
+	public void setCache(TileCache cache) {
+		renderer.setCache(cache);
+	}
+	
+	/**
+	 * Sets the metrics renders report to.
+	 * @param metrics - The new metrics, or null to stop counting.
+	 */
+	public void setMetrics(RenderMetrics metrics) {
+		renderer.setMetrics(metrics);
+	}
+	
+	/**
+	 * Makes renderToFile render through a TileCoordinator instead of this
+	 * process's renderer.
+	 * @param workers - How many TileWorkers to start on this machine.
+	 * @param port - The port workers connect to, or 0 for any free port.
+	 */
+	public void setDistributed(int workers, int port) {
+		this.workers = workers;
+		this.port = port;
+	}
+	
+	/**
+	 * Sets whether each render is checked against a full pixel by pixel render.
+	 * @param verify - Whether to log the number of differing pixels.
+	 */
+	public void setVerify(boolean verify) {
+		this.verify = verify;
+	}
+	
 	/**
 	 * Returns the Pair of dimensions for the image.
 	 * @return The Pair of dimensions for the image.
@@ -461,6 +1140,22 @@ public class Runner {
 		return center;
 	}
 	
+	/**
+	 * Returns the x coordinate of the center in full precision.
+	 * @return The x coordinate of the center.
+	 */
+	public BigDecimal getPreciseCenterX() {
+		return preciseCenterX;
+	}
+	
+	/**
+	 * Returns the y coordinate of the center in full precision.
+	 * @return The y coordinate of the center.
+	 */
+	public BigDecimal getPreciseCenterY() {
+		return preciseCenterY;
+	}
+	
 	/**
 	 * Returns the Pair of coordinates for the transformed scale.
 	 * @return The Pair of coordinates for the transformed scale.
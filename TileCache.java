@@ -0,0 +1,172 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in memory cache of rendered tiles, so panning and zooming back to a
+ * region which was already rendered does not iterate it again.
+ * Tiles are evicted least recently used first once the cache holds more
+ * than its memory budget. Safe to use from several threads.
+ * @author Blake
+ */
+public class TileCache {
+
+	/**
+	 * A rough estimate of the bytes a map entry and its key take,
+	 * on top of the tile's array.
+	 */
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private final LinkedHashMap<Key, Frame> tiles;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private long evictions;
+	private long budget;
+	private long bytes;
+
+	/**
+	 * Constructor for this TileCache.
+	 * @param budget - The most memory the tiles may take, in bytes.
+	 */
+	public TileCache(long budget) {
+		tiles = new LinkedHashMap<>(16, 0.75f, true);
+		hits = new LongAdder();
+		misses = new LongAdder();
+		this.budget = budget;
+	}
+
+	/**
+	 * Returns a tile, or null if the tile is not cached.
+	 * The returned Frame must not be modified.
+	 * @param key - The tile to look up.
+	 * @return The tile, or null.
+	 */
+	public Frame get(Key key) {
+		Frame tile;
+		synchronized(this) {
+			tile = tiles.get(key);
+		}
+		if(tile == null) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return tile;
+	}
+
+	/**
+	 * Stores the iterations of a tile, evicting the least recently used
+	 * tiles until the cache fits in its budget again.
+	 * @param key - The tile being stored.
+	 * @param tile - The tile. Must not be modified afterwards.
+	 */
+	public synchronized void put(Key key, Frame tile) {
+		Frame old = tiles.put(key, tile);
+		if(old != null) {
+			bytes -= sizeOf(old);
+		}
+		bytes += sizeOf(tile);
+		evict();
+	}
+
+	/**
+	 * Sets the most memory the tiles may take, evicting tiles if needed.
+	 * @param budget - The new budget in bytes.
+	 */
+	public synchronized void setBudget(long budget) {
+		this.budget = budget;
+		evict();
+	}
+
+	/**
+	 * Removes every tile. The hit and miss counters are kept.
+	 */
+	public synchronized void clear() {
+		tiles.clear();
+		bytes = 0;
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<Key, Frame>> it = tiles.entrySet().iterator();
+		while(bytes > budget && it.hasNext()) {
+			bytes -= sizeOf(it.next().getValue());
+			it.remove();
+			evictions++;
+		}
+	}
+
+	private static long sizeOf(Frame tile) {
+		return 8L * tile.iterations.length + ENTRY_OVERHEAD;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized int getSize() {
+		return tiles.size();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Represents the counters of this cache as a String.
+	 */
+	public String toString() {
+		return String.format("TileCache(tiles=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d)",
+				getSize(), getBytes(), getBudget(), getHits(), getMisses(), getEvictions());
+	}
+
+	/**
+	 * Identifies a tile. The level describes everything the iterations of a
+	 * tile depend on besides its position: the fractal and its parameters,
+	 * the maximum iterations, the pixel size (zoom level) and the tile size.
+	 * The position is the tile's column and row on the global grid of
+	 * that level.
+	 */
+	public static final class Key {
+
+		private final String level;
+		private final long column;
+		private final long row;
+
+		public Key(String level, long column, long row) {
+			this.level = level;
+			this.column = column;
+			this.row = row;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return column == key.column && row == key.row && level.equals(key.level);
+		}
+
+		@Override
+		public int hashCode() {
+			return (level.hashCode() * 31 + Long.hashCode(column)) * 31 + Long.hashCode(row);
+		}
+
+		public String toString() {
+			return String.format("Key(%s, %d, %d)", level, column, row);
+		}
+	}
+}
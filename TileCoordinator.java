@@ -0,0 +1,364 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders a view by splitting it into tiles and handing them to
+ * TileWorker processes over TCP. Workers connect to the coordinator, so
+ * the same code runs workers spawned on this machine and workers started
+ * by hand on other hosts with java TileWorker host port. Each worker
+ * pulls one tile at a time, so fast workers take more tiles. A tile whose
+ * worker disconnects, fails or takes longer than the timeout goes back in
+ * the queue for another worker, and the stalled worker is dropped.
+ * Workers render each tile as a window of the whole view (see
+ * Viewport.window), so the frame is the same as a single render's.
+ * The protocol: the coordinator sends MAGIC, the fractal's spec (see
+ * Fractal.parse), maxIterations, the renderer's options and the whole
+ * view, then for each tile TILE, its index, its top left pixel and its
+ * size. The worker answers with the index, the iterations and the escapes
+ * of the tile. END closes the connection.
+ * @author Blake
+ */
+public class TileCoordinator {
+
+	public static final int MAGIC = 0x46524143;
+	public static final int DEFAULT_TILE_SIZE = 256;
+	public static final long DEFAULT_TIMEOUT = 60000;
+	static final byte END = 0;
+	static final byte TILE = 1;
+	/**
+	 * The options of this JVM which local workers are started with: heap and
+	 * stack sizes, system properties and modules. Others, like
+	 * -XX:StartFlightRecording or -agentlib:jdwp, would make every worker
+	 * fight this JVM for the same file or port.
+	 */
+	private static final String[] INHERITED_OPTIONS = {"-Xmx", "-Xms", "-Xss", "-D", "--add-modules"};
+
+	private final Fractal<?> fractal;
+	private final Viewport view;
+	private final int maxIterations;
+	private int tileSize;
+	private long timeout;
+	private int port;
+	private boolean periodicityChecking;
+	private boolean perturbation;
+	private boolean doubleDoubles;
+
+	/**
+	 * Constructor for this TileCoordinator.
+	 * @param fractal - The fractal to render. Must survive Fractal.parse of its toString.
+	 * @param view - The area of the complex plane to render.
+	 * @param maxIterations - The maximum number of iterations per pixel.
+	 */
+	public TileCoordinator(Fractal<?> fractal, Viewport view, int maxIterations) {
+		this.fractal = fractal;
+		this.view = view;
+		this.maxIterations = maxIterations;
+		tileSize = DEFAULT_TILE_SIZE;
+		timeout = DEFAULT_TIMEOUT;
+		periodicityChecking = true;
+		perturbation = true;
+		doubleDoubles = true;
+	}
+
+	/**
+	 * A tile of the view, from pixel (x0, y0) of the whole view.
+	 */
+	private static final class Tile {
+
+		final int index;
+		final int x0;
+		final int y0;
+		final int width;
+		final int height;
+
+		Tile(int index, int x0, int y0, int width, int height) {
+			this.index = index;
+			this.x0 = x0;
+			this.y0 = y0;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	/**
+	 * Renders the view into the frame. Spawns the given number of workers
+	 * on this machine, each a new JVM with the same class path, and waits
+	 * for them and any others which connect to the port until every tile
+	 * is done. The local workers are stopped afterwards.
+	 * @param frame - The output, the same size as the view.
+	 * @param localWorkers - How many workers to start on this machine.
+	 * @param listener - Notified from a connection's thread after each tile is
+	 * copied into the frame. May be null.
+	 * @throws IOException If the port could not be opened, or every worker
+	 * is gone and none connects within the timeout.
+	 */
+	public void render(Frame frame, int localWorkers, TileListener listener) throws IOException {
+		int columns = (view.width + tileSize - 1) / tileSize;
+		int rows = (view.height + tileSize - 1) / tileSize;
+		BlockingQueue<Tile> queue = new LinkedBlockingQueue<>();
+		for(int i=0;i<columns*rows;i++) {
+			int x0 = i % columns * tileSize;
+			int y0 = i / columns * tileSize;
+			queue.add(new Tile(i, x0, y0, Math.min(tileSize, view.width - x0), Math.min(tileSize, view.height - y0)));
+		}
+		boolean[] done = new boolean[columns * rows];
+		CountDownLatch remaining = new CountDownLatch(columns * rows);
+		AtomicInteger connected = new AtomicInteger();
+		List<Process> processes = new ArrayList<>();
+		//a free port is only for local workers, so it is not opened to the network
+		try(ServerSocket server = port == 0
+				? new ServerSocket(0, 50, InetAddress.getLoopbackAddress())
+				: new ServerSocket(port)) {
+			Log.info("Coordinator listening on port %d for %d tiles%n", server.getLocalPort(), columns * rows);
+			for(int i=0;i<localWorkers;i++) {
+				processes.add(spawn(server.getInetAddress(), server.getLocalPort()));
+			}
+			Thread acceptor = new Thread(() -> {
+				while(!server.isClosed()) {
+					try {
+						Socket socket = server.accept();
+						connected.incrementAndGet();
+						Thread connection = new Thread(() -> {
+							try {
+								serve(socket, queue, done, remaining, frame, listener);
+							} finally {
+								connected.decrementAndGet();
+							}
+						}, "Worker " + socket.getRemoteSocketAddress());
+						connection.setDaemon(true);
+						connection.start();
+					} catch(IOException e) {
+						if(!server.isClosed()) {
+							Log.warn("Could not accept a worker: %s", e);
+						}
+					}
+				}
+			}, "Coordinator");
+			acceptor.setDaemon(true);
+			acceptor.start();
+			long idleSince = System.nanoTime();
+			try {
+				while(!remaining.await(1, TimeUnit.SECONDS)) {
+					if(connected.get() > 0) {
+						idleSince = System.nanoTime();
+					} else if(System.nanoTime() - idleSince > timeout * 1000000) {
+						throw new IOException(remaining.getCount() + " tiles left and no worker connected for "
+								+ timeout + "ms");
+					}
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted with " + remaining.getCount() + " tiles left");
+			}
+		} finally {
+			//the connections send END once every tile is done, and local workers exit on it
+			for(Process process : processes) {
+				try {
+					if(!process.waitFor(1, TimeUnit.SECONDS)) {
+						process.destroy();
+					}
+				} catch(InterruptedException e) {
+					process.destroy();
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Feeds tiles to one worker until none are left, copying its results
+	 * into the frame. Puts the tile in progress back if the worker fails.
+	 */
+	private void serve(
+			Socket socket,
+			BlockingQueue<Tile> queue,
+			boolean[] done,
+			CountDownLatch remaining,
+			Frame frame,
+			TileListener listener) {
+		Tile tile = null;
+		try(socket) {
+			socket.setSoTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+			socket.setTcpNoDelay(true);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out.writeInt(MAGIC);
+			out.writeUTF(fractal.toString());
+			out.writeInt(maxIterations);
+			out.writeBoolean(periodicityChecking);
+			out.writeBoolean(perturbation);
+			out.writeBoolean(doubleDoubles);
+			out.writeInt(view.width);
+			out.writeInt(view.height);
+			out.writeUTF(view.getPreciseCenterX().toString());
+			out.writeUTF(view.getPreciseCenterY().toString());
+			out.writeDouble(view.scaleX);
+			out.writeDouble(view.scaleY);
+			while(remaining.getCount() > 0) {
+				tile = queue.poll(100, TimeUnit.MILLISECONDS);
+				if(tile == null) {
+					continue;
+				}
+				synchronized(done) {
+					if(done[tile.index]) {
+						tile = null;
+						continue;
+					}
+				}
+				out.writeByte(TILE);
+				out.writeInt(tile.index);
+				out.writeInt(tile.x0);
+				out.writeInt(tile.y0);
+				out.writeInt(tile.width);
+				out.writeInt(tile.height);
+				out.flush();
+				Frame result = new Frame(tile.width, tile.height);
+				if(in.readInt() != tile.index) {
+					throw new IOException("Worker answered for the wrong tile");
+				}
+				for(int i=0;i<result.iterations.length;i++) {
+					result.iterations[i] = in.readInt();
+				}
+				for(int i=0;i<result.escapes.length;i++) {
+					result.escapes[i] = in.readFloat();
+				}
+				boolean first;
+				synchronized(done) {
+					first = !done[tile.index];
+					done[tile.index] = true;
+				}
+				if(first) {
+					frame.copy(result, 0, 0, tile.x0, tile.y0, result.width, result.height);
+					remaining.countDown();
+					if(listener != null) {
+						listener.tileFinished(tile.x0, tile.y0, result.width, result.height);
+					}
+				}
+				tile = null;
+			}
+			out.writeByte(END);
+			out.flush();
+		} catch(SocketTimeoutException e) {
+			Log.warn("Worker %s stalled, dropping it", socket.getRemoteSocketAddress());
+		} catch(SocketException | EOFException e) {
+			Log.warn("Worker %s disconnected", socket.getRemoteSocketAddress());
+		} catch(IOException e) {
+			Log.warn("Worker %s failed: %s", socket.getRemoteSocketAddress(), e);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			if(tile != null) {
+				Log.warn("Dispatching tile %d again", tile.index);
+				queue.add(tile);
+			}
+		}
+	}
+
+	/**
+	 * Starts a TileWorker in a new JVM with the same class path as this one
+	 * and its INHERITED_OPTIONS, connecting to the address and port of the
+	 * coordinator's socket on this machine.
+	 */
+	private static Process spawn(InetAddress address, int port) throws IOException {
+		List<String> command = new ArrayList<>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		for(String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if(isInherited(option)) {
+				command.add(option);
+			}
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(TileWorker.class.getName());
+		command.add(address.isAnyLocalAddress() ? "localhost" : address.getHostAddress());
+		command.add(String.valueOf(port));
+		return new ProcessBuilder(command).inheritIO().start();
+	}
+
+	/**
+	 * Returns whether workers are started with an option of this JVM.
+	 * The JMX remote properties are left out, since they open a port.
+	 */
+	static boolean isInherited(String option) {
+		if(option.startsWith("-Dcom.sun.management.")) {
+			return false;
+		}
+		for(String prefix : INHERITED_OPTIONS) {
+			if(option.startsWith(prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Sets the width and height of the tiles sent to workers. Each worker
+	 * splits them further between its own threads.
+	 * @param tileSize - The new tile size in pixels.
+	 */
+	public void setTileSize(int tileSize) {
+		if(tileSize < 1) {
+			throw new IllegalArgumentException("tileSize must be positive: " + tileSize);
+		}
+		this.tileSize = tileSize;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Sets how long a worker may take for a tile before the tile is sent
+	 * to another worker, which is also how long a render waits without
+	 * any worker before it fails.
+	 * @param timeout - The new timeout in milliseconds.
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Sets the port workers connect to.
+	 * @param port - The new port, or 0 for any free port on the loopback
+	 * address, which only local workers can reach.
+	 */
+	public void setPort(int port) {
+		this.port = port;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Sets the options of the workers' renderers, which are on by default.
+	 * See Renderer.
+	 */
+	public void setOptions(boolean periodicityChecking, boolean perturbation, boolean doubleDoubles) {
+		this.periodicityChecking = periodicityChecking;
+		this.perturbation = perturbation;
+		this.doubleDoubles = doubleDoubles;
+	}
+}
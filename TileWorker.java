@@ -0,0 +1,68 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.Socket;
+
+/**
+ * Renders tiles for a TileCoordinator. Connects to the coordinator, reads
+ * the fractal and options, and renders the tiles it is sent on every core
+ * of this machine until the coordinator sends END or disconnects.
+ * Usage: java TileWorker host port [threads]
+ * @author Blake
+ */
+public class TileWorker {
+
+	public static void main(String[] args) throws IOException, InvalidFractalException {
+		if(args.length < 2) {
+			Log.error("Usage: java TileWorker host port [threads]");
+			System.exit(2);
+		}
+		String host = args[0];
+		int port = Integer.parseInt(args[1]);
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		System.setProperty("java.awt.headless", "true");
+		try(Socket socket = new Socket(host, port)) {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			if(in.readInt() != TileCoordinator.MAGIC) {
+				throw new IOException("Not a TileCoordinator at " + host + ":" + port);
+			}
+			Fractal<?> fractal = Fractal.parse(in.readUTF());
+			int maxIterations = in.readInt();
+			Renderer renderer = new Renderer(threads, Renderer.DEFAULT_TILE_SIZE);
+			renderer.setPeriodicityChecking(in.readBoolean());
+			renderer.setPerturbation(in.readBoolean());
+			renderer.setDoubleDoubles(in.readBoolean());
+			int width = in.readInt();
+			int height = in.readInt();
+			BigDecimal centerX = new BigDecimal(in.readUTF());
+			BigDecimal centerY = new BigDecimal(in.readUTF());
+			double scaleX = in.readDouble();
+			double scaleY = in.readDouble();
+			Viewport view = new Viewport(width, height, centerX, centerY, scaleX, scaleY);
+			int tiles = 0;
+			while(in.readByte() == TileCoordinator.TILE) {
+				int index = in.readInt();
+				int x0 = in.readInt();
+				int y0 = in.readInt();
+				Frame frame = new Frame(in.readInt(), in.readInt());
+				renderer.render(fractal, view.window(x0, y0, frame.width, frame.height),
+						maxIterations, frame, null);
+				out.writeInt(index);
+				for(int i : frame.iterations) {
+					out.writeInt(i);
+				}
+				for(float escape : frame.escapes) {
+					out.writeFloat(escape);
+				}
+				out.flush();
+				tiles++;
+			}
+			Log.debug("Worker rendered %d tiles", tiles);
+		}
+	}
+}
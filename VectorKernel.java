@@ -0,0 +1,83 @@
+import java.util.Arrays;
+
+/**
+ * Iterates a row of pixels several at a time, one pixel per lane of a SIMD
+ * register, in lockstep: every lane takes the same step, lanes which
+ * bailed out are masked off, and the row moves on once no lane is left.
+ * The results are exactly those of the fractal's DoubleKernel.
+ * The implementations live in the vector directory since they are built on
+ * the incubating Vector API, which has to be added to both the compiler
+ * and the JVM:
+ * javac --add-modules jdk.incubator.vector -d out *.java vector/*.java
+ * java --add-modules jdk.incubator.vector -cp out Runner
+ * Without it, load returns null and renderers stay scalar.
+ * @author Blake
+ */
+public abstract class VectorKernel {
+
+	/**
+	 * How close z has to come back to an earlier value of z for the orbit
+	 * to count as periodic. 0 disables periodicity checking.
+	 */
+	protected double periodicityTolerance;
+
+	/**
+	 * Iterates count pixels of a row and stores their iterations, and |z|
+	 * for those which bailed out, the same way Renderer does for a DoubleKernel.
+	 * @param x - The adjusted x coordinates of the pixels.
+	 * @param y - The adjusted y coordinate of the row.
+	 * @param count - The number of pixels.
+	 * @param maxIterations - The maximum number of iterations per pixel.
+	 * @param iterations - The output for the iterations, -1 for pixels which
+	 * never bailed out.
+	 * @param escapes - The output for |z|, NaN for pixels which never bailed out.
+	 * @param offset - The index in the outputs of the first pixel.
+	 */
+	public abstract void iterateRow(
+			double[] x,
+			double y,
+			int count,
+			int maxIterations,
+			int[] iterations,
+			float[] escapes,
+			int offset);
+
+	/**
+	 * Returns the number of pixels iterated at once.
+	 */
+	public abstract int getLanes();
+
+	/**
+	 * Sets how close an orbit has to return to itself to be reported as
+	 * interior. Renderers scale this to the pixel size.
+	 * @param tolerance - The new tolerance, or 0 to disable periodicity checking.
+	 */
+	public void setPeriodicityTolerance(double tolerance) {
+		periodicityTolerance = tolerance;
+	}
+
+	public double getPeriodicityTolerance() {
+		return periodicityTolerance;
+	}
+
+	/**
+	 * Creates a vector kernel by name, if it was compiled and the Vector
+	 * API is available.
+	 * @param className - The name of the kernel's class.
+	 * @param parameters - The arguments of its constructor, all doubles.
+	 * @return A new kernel, or null.
+	 */
+	static VectorKernel load(String className, double... parameters) {
+		Class<?>[] types = new Class<?>[parameters.length];
+		Arrays.fill(types, double.class);
+		Object[] args = new Object[parameters.length];
+		for(int i=0;i<parameters.length;i++) {
+			args[i] = parameters[i];
+		}
+		try {
+			return (VectorKernel) Class.forName(className).getConstructor(types).newInstance(args);
+		} catch(ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+}
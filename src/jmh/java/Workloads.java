@@ -0,0 +1,189 @@
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The workloads of the JMH benchmarks in the bench package: the arithmetic,
+ * the kernels, coloring and whole renders at fixed reference views. Setup
+ * happens in the constructor, outside of the timing, and every result goes
+ * into JMH's Blackhole so the JIT cannot remove the work.
+ * The benchmarks themselves only pick a workload by name, since JMH does not
+ * generate benchmarks in the default package, and classes in a package cannot
+ * refer to classes in the default package.
+ * Run them with gradle jmh, or some of them with gradle jmh -Pbenchmarks=regex.
+ * @author Blake
+ */
+public class Workloads {
+
+	private static final int POINTS = 1024;
+	private static final int MAX_ITERATIONS = 256;
+
+	private final Map<String, Consumer<Blackhole>> workloads = new LinkedHashMap<>();
+
+	/**
+	 * Looks up a workload. Called by the benchmarks once per fork.
+	 * @param name - The name of the workload, like kernel/mandelbrot.
+	 * @return The workload.
+	 * @throws InvalidFractalException If a fractal of the benchmarks does not parse.
+	 */
+	public static Consumer<Blackhole> get(String name) throws InvalidFractalException {
+		Consumer<Blackhole> workload = new Workloads().workloads.get(name);
+		if(workload == null) {
+			throw new IllegalArgumentException("Unknown workload: " + name);
+		}
+		return workload;
+	}
+
+	/**
+	 * Registers every workload.
+	 */
+	Workloads() throws InvalidFractalException {
+		//points around the interesting part of the reference views, the same for every run
+		double[] xs = new double[POINTS];
+		double[] ys = new double[POINTS];
+		CDouble[] zs = new CDouble[POINTS];
+		Random random = new Random(42);
+		for(int i=0;i<POINTS;i++) {
+			xs[i] = random.nextDouble() * 3 - 2;
+			ys[i] = random.nextDouble() * 3 - 1.5;
+			zs[i] = new CDouble(xs[i], ys[i]);
+		}
+
+		Map<String, String> fractals = new LinkedHashMap<>();
+		fractals.put("mandelbrot", "mandelbrot");
+		fractals.put("integerbrot", "integerbrot:3");
+		fractals.put("multibrot", "multibrot:2.5");
+		fractals.put("multibrot-complex", "multibrot:2.5,0.1");
+		fractals.put("julia", "julia:-0.8,0.156");
+		fractals.put("polynomial", "polynomial:0.3,0,1,0.5");
+		fractals.put("newton", "newton:-1,0,0,1");
+		fractals.put("formula", "formula:z^3 + c*z - 1;|z| > 2;0");
+		for(Map.Entry<String, String> e : fractals.entrySet()) {
+			Fractal<CDouble> fractal = Fractal.parse(e.getValue());
+			workloads.put("iterate/" + e.getKey(), sink -> {
+				for(int i=0;i<POINTS;i++) {
+					sink.consume(fractal.iterate(xs[i], ys[i], MAX_ITERATIONS));
+				}
+			});
+			DoubleKernel kernel = fractal.getKernel();
+			if(kernel != null) {
+				double[] z = kernel.newState();
+				workloads.put("kernel/" + e.getKey(), sink -> {
+					for(int i=0;i<POINTS;i++) {
+						sink.consume(kernel.iterate(xs[i], ys[i], MAX_ITERATIONS, z));
+					}
+				});
+			}
+		}
+
+		CDouble w = new CDouble(0.5, -0.25);
+		CDouble real = new CDouble(2.5, 0);
+		CDouble complex = new CDouble(2.5, 0.1);
+		cdouble("cdouble/add", zs, z -> z.add(w));
+		cdouble("cdouble/sub", zs, z -> z.sub(w));
+		cdouble("cdouble/mul", zs, z -> z.mul(w));
+		cdouble("cdouble/div", zs, z -> z.div(w));
+		cdouble("cdouble/pow-int", zs, z -> z.pow(7));
+		cdouble("cdouble/pow-real", zs, z -> z.pow(real));
+		cdouble("cdouble/pow-complex", zs, z -> z.pow(complex));
+		cdouble("cdouble/exp", zs, z -> z.exp());
+		cdouble("cdouble/ln", zs, z -> z.ln());
+		workloads.put("cdouble/abs", sink -> {
+			for(int i=0;i<POINTS;i++) {
+				sink.consume(zs[i].abs());
+			}
+		});
+
+		double[] coefficients = new double[25];
+		for(int i=0;i<coefficients.length;i++) {
+			coefficients[i] = random.nextDouble() * 2 - 1;
+		}
+		CPolynomial polynomial = new CPolynomial(coefficients);
+		cdouble("polynomial/sum", zs, polynomial::sum);
+		double[] out = new double[4];
+		workloads.put("polynomial/sum-doubles", sink -> {
+			for(int i=0;i<POINTS;i++) {
+				polynomial.sum(xs[i], ys[i], out, 0);
+				sink.consume(out[0]);
+			}
+		});
+		workloads.put("polynomial/sum-with-derivative", sink -> {
+			for(int i=0;i<POINTS;i++) {
+				polynomial.sumWithDerivative(xs[i], ys[i], out, 0);
+				sink.consume(out[2]);
+			}
+		});
+		workloads.put("polynomial/roots", sink -> sink.consume(polynomial.roots()));
+
+		Gradient gradient = SimpleLinearGradient.wikipedia(2048);
+		workloads.put("gradient/get", sink -> {
+			for(int i=0;i<POINTS;i++) {
+				sink.consume(gradient.get(i * 7919));
+			}
+		});
+		workloads.put("gradient/make-colors", sink -> sink.consume(SimpleLinearGradient.wikipedia(2048)));
+
+		//whole frames at fixed reference views
+		Fractal<CDouble> mandelbrot = new Mandelbrot();
+		Viewport seahorses = new Viewport(800, 600, -0.745, 0.11, 0.02, 0.015);
+		for(RenderMode mode : RenderMode.values()) {
+			render("render/seahorses-" + mode.name().toLowerCase(), mandelbrot, seahorses, 1000, mode, null);
+		}
+		render("render/seahorses-cached", mandelbrot, seahorses, 1000, RenderMode.TILED, new TileCache(1 << 27));
+		render("render/julia", Fractal.parse("julia:-0.8,0.156"), new Viewport(800, 600, 0, 0, 3, 2.25),
+				1000, RenderMode.TILED, null);
+		render("render/newton", Fractal.parse("newton:-1,0,0,1"), new Viewport(800, 600, 0, 0, 3, 2.25),
+				1000, RenderMode.TILED, null);
+		render("render/deep-double-double", mandelbrot,
+				new Viewport(400, 300, new BigDecimal("-1.7687782"), new BigDecimal("0.0017"), 4e-20, 3e-20),
+				2000, RenderMode.TILED, null);
+		render("render/deep-perturbation", mandelbrot,
+				new Viewport(400, 300,
+						new BigDecimal("-1.74999841099374081749002483162428393452822172335808534616943930976364725846655540417646727085571962736578151132907961927190726789896685696750162524460775"),
+						new BigDecimal("-0.00000000000000165712469295418692325810961981279189026504290127375760405334498110850956047368308707050735960323397389547038231194872482690340369921750514"),
+						4e-60, 3e-60),
+				2000, RenderMode.TILED, null);
+
+		Frame frame = new Frame(seahorses.width, seahorses.height);
+		new Renderer().render(mandelbrot, seahorses, 1000, frame, null);
+		int[] pixels = new int[frame.width * frame.height];
+		Renderer colorer = new Renderer();
+		workloads.put("color/frame", sink -> {
+			frame.color(gradient, pixels, 0, 0, frame.width, frame.height);
+			sink.consume(pixels);
+		});
+		workloads.put("color/recolor", sink -> {
+			colorer.recolor(frame, gradient, pixels);
+			sink.consume(pixels);
+		});
+		workloads.put("color/histogram", sink -> {
+			colorer.equalize(frame, gradient, pixels);
+			sink.consume(pixels);
+		});
+	}
+
+	private void cdouble(String name, CDouble[] zs, UnaryOperator<CDouble> operation) {
+		workloads.put(name, sink -> {
+			for(int i=0;i<POINTS;i++) {
+				sink.consume(operation.apply(zs[i]));
+			}
+		});
+	}
+
+	private void render(String name, Fractal<?> fractal, Viewport view, int maxIterations,
+			RenderMode mode, TileCache cache) {
+		Renderer renderer = new Renderer();
+		renderer.setMode(mode);
+		renderer.setCache(cache);
+		Frame frame = new Frame(view.width, view.height);
+		workloads.put(name, sink -> {
+			renderer.render(fractal, view, maxIterations, frame, null);
+			sink.consume(frame.iterations);
+		});
+	}
+}
@@ -0,0 +1,17 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * CDouble arithmetic on 1024 points around the Mandelbrot set.
+ * @author Blake
+ */
+public class CDoubleBenchmark extends WorkloadBenchmark {
+
+	@Param({"add", "sub", "mul", "div", "pow-int", "pow-real", "pow-complex", "exp", "ln", "abs"})
+	public String operation;
+
+	protected String workload() {
+		return "cdouble/" + operation;
+	}
+}
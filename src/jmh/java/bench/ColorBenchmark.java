@@ -0,0 +1,21 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Coloring a rendered 800x600 frame of the seahorse valley.
+ * @author Blake
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ColorBenchmark extends WorkloadBenchmark {
+
+	@Param({"frame", "recolor", "histogram"})
+	public String operation;
+
+	protected String workload() {
+		return "color/" + operation;
+	}
+}
@@ -0,0 +1,17 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Looking up 1024 colors, and building a gradient of 2048 colors.
+ * @author Blake
+ */
+public class GradientBenchmark extends WorkloadBenchmark {
+
+	@Param({"get", "make-colors"})
+	public String operation;
+
+	protected String workload() {
+		return "gradient/" + operation;
+	}
+}
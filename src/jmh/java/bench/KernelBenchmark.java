@@ -0,0 +1,21 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Iterating 1024 points around the Mandelbrot set up to 256 times, through
+ * Fractal.iterate and through the fractal's DoubleKernel.
+ * @author Blake
+ */
+public class KernelBenchmark extends WorkloadBenchmark {
+
+	@Param({"iterate", "kernel"})
+	public String loop;
+
+	@Param({"mandelbrot", "integerbrot", "multibrot", "multibrot-complex", "julia", "polynomial", "newton", "formula"})
+	public String fractal;
+
+	protected String workload() {
+		return loop + "/" + fractal;
+	}
+}
@@ -0,0 +1,17 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Evaluating a polynomial of degree 24 on 1024 points, and finding its roots.
+ * @author Blake
+ */
+public class PolynomialBenchmark extends WorkloadBenchmark {
+
+	@Param({"sum", "sum-doubles", "sum-with-derivative", "roots"})
+	public String operation;
+
+	protected String workload() {
+		return "polynomial/" + operation;
+	}
+}
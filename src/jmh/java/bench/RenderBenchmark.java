@@ -0,0 +1,24 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * Whole renders of fixed views: the seahorse valley in every render mode
+ * and from the tile cache, a Julia set, a Newton fractal, and deep views
+ * rendered with double-doubles and by perturbation.
+ * @author Blake
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RenderBenchmark extends WorkloadBenchmark {
+
+	@Param({"seahorses-tiled", "seahorses-mariani_silver", "seahorses-progressive", "seahorses-cached",
+		"julia", "newton", "deep-double-double", "deep-perturbation"})
+	public String view;
+
+	protected String workload() {
+		return "render/" + view;
+	}
+}
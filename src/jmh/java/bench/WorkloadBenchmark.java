@@ -0,0 +1,52 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Runs one of the Workloads, picked by the parameters of a subclass, and
+ * reports the average time of one operation. Each parameter runs in fresh
+ * JVMs with the Vector API, so the vector kernels are measured too.
+ * @author Blake
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public abstract class WorkloadBenchmark {
+
+	private Consumer<Blackhole> workload;
+
+	/**
+	 * Returns the name of the workload to run, like kernel/mandelbrot.
+	 */
+	protected abstract String workload();
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() throws ReflectiveOperationException {
+		//Workloads is in the default package, which can only be reached by reflection
+		workload = (Consumer<Blackhole>) Class.forName("Workloads")
+				.getMethod("get", String.class)
+				.invoke(null, workload());
+	}
+
+	@Benchmark
+	public void run(Blackhole sink) {
+		workload.accept(sink);
+	}
+}
@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests for BigComplexDecimal, mainly that every result is rounded to its
+ * context, since reference orbits square the same number thousands of times.
+ * @author Blake
+ */
+class BigComplexDecimalTest {
+
+	private static final BigDecimal REAL_AXIS = new BigDecimal("-1.99999911758738");
+	private static final double PIXEL_SIZE = 1e-30 / 128;
+
+	@Test
+	void zeroHasNoScale() {
+		MathContext context = new MathContext(20);
+		BigComplexDecimal z = new BigComplexDecimal(new BigDecimal("1.5"), new BigDecimal("0E-40"), context);
+		assertEquals(BigDecimal.ZERO, z.getImag());
+		assertEquals(BigDecimal.ZERO, z.mul(z).getImag());
+		assertEquals(BigDecimal.ZERO, z.square().getImag());
+	}
+
+	@Test
+	void realAxisOrbitStaysRounded() {
+		MathContext context = BigComplexDecimal.contextFor(REAL_AXIS, BigDecimal.ZERO, PIXEL_SIZE);
+		BigComplexDecimal c = new BigComplexDecimal(REAL_AXIS, BigDecimal.ZERO, context);
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			BigComplexDecimal z = new BigComplexDecimal(BigDecimal.ZERO, BigDecimal.ZERO, context);
+			for(int i=0;i<5000;i++) {
+				z = z.square().add(c);
+				assertTrue(z.getReal().precision() <= context.getPrecision(), "unrounded at " + i);
+				assertEquals(0, z.getImag().scale(), "imaginary part grew a scale at " + i);
+			}
+		});
+	}
+
+	@Test
+	void realAxisReferenceOrbit() {
+		//this view used to hang while squaring the zero imaginary part of the reference
+		Perturbation perturbation = assertTimeoutPreemptively(Duration.ofSeconds(30),
+				() -> new Perturbation(new CDouble(0, 0), 2, 2, REAL_AXIS, BigDecimal.ZERO, PIXEL_SIZE, 5000));
+		double[] z = perturbation.newState();
+		for(int i=-2;i<=2;i++) {
+			assertEquals(perturbation.iteratePrecise(i * PIXEL_SIZE, 0), perturbation.iterate(i * PIXEL_SIZE, 0, z));
+		}
+	}
+}
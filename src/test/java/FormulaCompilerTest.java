@@ -0,0 +1,26 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that compiled formula kernels compile, and agree with the interpreter.
+ * @author Blake
+ */
+class FormulaCompilerTest {
+
+	@Test
+	void startMayUseZ() throws InvalidFractalException {
+		FormulaFractal fractal = (FormulaFractal) Fractal.parse("formula:z^2 + c;|z| > 2;z + c");
+		DoubleKernel kernel = fractal.getKernel();
+		assertNull(fractal.getCompileError());
+		assertNotNull(kernel);
+		double[] z = kernel.newState();
+		for(int i=0;i<20;i++) {
+			double x = -2 + i * 0.125;
+			double y = 0.3 - i * 0.05;
+			assertEquals(fractal.iterate(x, y, 100), kernel.iterate(x, y, 100, z), "at " + x + ", " + y);
+		}
+	}
+}
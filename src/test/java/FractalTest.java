@@ -0,0 +1,64 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests Fractal.parse, which reads back the toString of fractals for the
+ * tile cache and for distributed workers.
+ * @author Blake
+ */
+class FractalTest {
+
+	@Test
+	void parsesItsOwnToString() throws InvalidFractalException {
+		String[] specs = {
+				"mandelbrot", "integerbrot:3", "multibrot:2.5,0.1", "julia:-0.8,0.156",
+				"polynomial:0.3,0.0,1.0,0.5", "newton:-1.0,0.0,0.0,1.0",
+				"newton:-1.0,0.0+0.5i,0.0,1.0", "polynomial:1.0E-4-2.5E-5i,-0.5i,1.0"};
+		for(String spec : specs) {
+			Fractal<CDouble> fractal = Fractal.parse(spec);
+			assertEquals(fractal.toString(), Fractal.parse(fractal.toString()).toString());
+		}
+	}
+
+	@Test
+	void emptyFormulaPartsAreDefaults() throws InvalidFractalException {
+		String expected = Fractal.parse("formula:z^2+c").toString();
+		assertEquals(expected, Fractal.parse("formula:z^2+c;;").toString());
+		assertEquals(expected, Fractal.parse("formula:z^2+c; ;").toString());
+		assertEquals(expected, Fractal.parse("formula:z^2+c;").toString());
+	}
+
+	@Test
+	void keepsComplexCoefficients() throws InvalidFractalException {
+		Fractal<CDouble> fractal = Fractal.parse("newton:-1,0.5-2i,0,1");
+		assertEquals("newton:-1.0,0.5-2.0i,0.0,1.0", fractal.toString());
+		for(int i=0;i<20;i++) {
+			double x = -1.5 + i * 0.15;
+			double y = 0.7 - i * 0.07;
+			assertEquals(fractal.iterate(x, y, 100), Fractal.parse(fractal.toString()).iterate(x, y, 100));
+		}
+	}
+
+	@Test
+	void parsesCoefficients() {
+		assertCoefficient(1.5, -2, "1.5-2i");
+		assertCoefficient(1e-4, 2.5e-5, "1.0E-4+2.5E-5i");
+		assertCoefficient(0, -0.5, "-0.5i");
+		assertCoefficient(0, 1, "i");
+		assertCoefficient(-3, 0, " -3 ");
+		assertThrows(NumberFormatException.class, () -> CPolynomial.parseCoefficient("1.5-xi"));
+	}
+
+	private static void assertCoefficient(double real, double imag, String s) {
+		CDouble c = CPolynomial.parseCoefficient(s);
+		assertEquals(real, c.getReal(), 0, s);
+		assertEquals(imag, c.getImag(), 0, s);
+	}
+
+	@Test
+	void rejectsComplexParameters() {
+		assertThrows(InvalidFractalException.class, () -> Fractal.parse("julia:-0.8+1i,0.156"));
+	}
+}
@@ -0,0 +1,31 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests Perturbation against iterating in full precision.
+ * @author Blake
+ */
+class PerturbationTest {
+
+	@Test
+	void rebasingLeavesNoGlitches() {
+		//a view into the seahorse valley which glitched against the center reference before rebasing
+		int width = 160;
+		double pixelSize = 1e-15 / width;
+		Perturbation perturbation = new Perturbation(new CDouble(0, 0), 2, 2,
+				new BigDecimal("-0.7436438870371587"), new BigDecimal("0.1318259042053119"), pixelSize, 6000);
+		double[] z = perturbation.newState();
+		for(int y=0;y<width;y+=20) {
+			for(int x=0;x<width;x+=20) {
+				double dx = (x - width / 2) * pixelSize;
+				double dy = (y - width / 2) * pixelSize;
+				assertEquals(perturbation.iteratePrecise(dx, dy), perturbation.iterate(dx, dy, z), "pixel " + x + ", " + y);
+			}
+		}
+		assertEquals(0, perturbation.getGlitches());
+		assertEquals(1, perturbation.getReferences());
+	}
+}
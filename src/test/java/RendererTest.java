@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the render modes and windows of a view agree with a plain
+ * tiled render.
+ * @author Blake
+ */
+class RendererTest {
+
+	@Test
+	void marianiSilverKeepsBasins() throws InvalidFractalException {
+		Fractal<CDouble> fractal = Fractal.parse("newton:-1,0,0,1");
+		Viewport view = new Viewport(300, 200, 0, 0, 3, 2);
+		Frame tiled = new Frame(view.width, view.height);
+		new Renderer().render(fractal, view, 1000, tiled, null);
+		Renderer renderer = new Renderer();
+		renderer.setMode(RenderMode.MARIANI_SILVER);
+		Frame filled = new Frame(view.width, view.height);
+		renderer.render(fractal, view, 1000, filled, null);
+		int different = 0;
+		for(int i=0;i<tiled.escapes.length;i++) {
+			if(Float.floatToIntBits(tiled.escapes[i]) != Float.floatToIntBits(filled.escapes[i])) {
+				different++;
+			}
+		}
+		assertEquals(0, different, "pixels going to a different root");
+	}
+
+	@Test
+	void windowsRenderLikeTheView() {
+		//the windows TileWorkers render, at sizes which split the view's tiles unevenly
+		Fractal<CDouble> fractal = new Mandelbrot();
+		assertWindowsMatch(fractal, new Viewport(301, 203,
+				new BigDecimal("-0.743643887"), new BigDecimal("0.131825904"), 3e-4, 2.25e-4), 2000);
+		assertWindowsMatch(fractal, new Viewport(301, 203,
+				new BigDecimal("-1.7687782"), new BigDecimal("0.0017"), 4e-20, 3e-20), 2000);
+	}
+
+	private static void assertWindowsMatch(Fractal<?> fractal, Viewport view, int maxIterations) {
+		Renderer renderer = new Renderer();
+		Frame whole = new Frame(view.width, view.height);
+		renderer.render(fractal, view, maxIterations, whole, null);
+		Frame windows = new Frame(view.width, view.height);
+		int size = 77;
+		for(int y=0;y<view.height;y+=size) {
+			for(int x=0;x<view.width;x+=size) {
+				Frame window = new Frame(Math.min(size, view.width - x), Math.min(size, view.height - y));
+				renderer.render(fractal, view.window(x, y, window.width, window.height), maxIterations, window, null);
+				windows.copy(window, 0, 0, x, y, window.width, window.height);
+			}
+		}
+		assertArrayEquals(whole.iterations, windows.iterations, view.toString());
+	}
+}
@@ -0,0 +1,151 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector kernel for Mandelbrot. z = z ^ 2 + c starting from z = 0.
+ * Lanes in the main cardioid or the period 2 bulb are masked off
+ * before the first step, like MandelbrotKernel does.
+ * @author Blake
+ */
+public class MandelbrotVectorKernel extends VectorKernel {
+
+	static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	private final double bailoutSquared;
+
+	public MandelbrotVectorKernel(double bailoutValue) {
+		bailoutSquared = bailoutValue * bailoutValue;
+	}
+
+	@Override
+	public void iterateRow(
+			double[] x,
+			double y,
+			int count,
+			int maxIterations,
+			int[] iterations,
+			float[] escapes,
+			int offset) {
+		DoubleVector ci = DoubleVector.broadcast(SPECIES, y);
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+		double y2 = y * y;
+		for(int i=0;i<count;i+=SPECIES.length()) {
+			VectorMask<Double> valid = SPECIES.indexInRange(i, count);
+			DoubleVector cr = DoubleVector.fromArray(SPECIES, x, i, valid);
+			//cardioid: q * (q + x - 1/4) <= y ^ 2 / 4, bulb: (x + 1) ^ 2 + y ^ 2 <= 1/16
+			DoubleVector xq = cr.sub(0.25);
+			DoubleVector q = xq.mul(xq).add(y2);
+			DoubleVector xb = cr.add(1);
+			VectorMask<Double> interior = q.mul(q.add(xq)).compare(VectorOperators.LE, 0.25 * y2)
+					.or(xb.mul(xb).add(y2).compare(VectorOperators.LE, 0.0625));
+			iterateQuadratic(zero, zero, cr, ci, valid.andNot(interior), valid,
+					bailoutSquared, periodicityTolerance, maxIterations, iterations, escapes, offset + i);
+		}
+	}
+
+	@Override
+	public int getLanes() {
+		return SPECIES.length();
+	}
+
+	/**
+	 * z = z ^ 2 + c for every active lane, in lockstep, with the same
+	 * operations in the same order as the scalar kernels so the results
+	 * match them exactly. Lanes which are valid but not active are interior.
+	 */
+	static void iterateQuadratic(
+			DoubleVector zr, DoubleVector zi,
+			DoubleVector cr, DoubleVector ci,
+			VectorMask<Double> active,
+			VectorMask<Double> valid,
+			double bailoutSquared,
+			double tolerance,
+			int maxIterations,
+			int[] iterations,
+			float[] escapes,
+			int offset) {
+		//lanes which never bail out keep these
+		for(int lane=0;lane<SPECIES.length();lane++) {
+			if(valid.laneIsSet(lane)) {
+				iterations[offset + lane] = -1;
+				escapes[offset + lane] = Float.NaN;
+			}
+		}
+		DoubleVector snapReal = zr;
+		DoubleVector snapImag = zi;
+		int steps = 0;
+		int limit = 1;
+		for(int n=0;n<maxIterations&&active.anyTrue();n++) {
+			DoubleVector zr2 = zr.mul(zr);
+			DoubleVector zi2 = zi.mul(zi);
+			VectorMask<Double> escaped = zr2.add(zi2).compare(VectorOperators.GE, bailoutSquared).and(active);
+			if(escaped.anyTrue()) {
+				for(int lane=0;lane<SPECIES.length();lane++) {
+					if(escaped.laneIsSet(lane)) {
+						double r = zr.lane(lane);
+						double i = zi.lane(lane);
+						iterations[offset + lane] = n;
+						escapes[offset + lane] = (float) Math.sqrt(r * r + i * i);
+					}
+				}
+				active = active.andNot(escaped);
+			}
+			zi = zr.mul(2).mul(zi).add(ci);
+			zr = zr2.sub(zi2).add(cr);
+			if(tolerance > 0) {
+				VectorMask<Double> periodic = zr.sub(snapReal).abs().compare(VectorOperators.LT, tolerance)
+						.and(zi.sub(snapImag).abs().compare(VectorOperators.LT, tolerance));
+				active = active.andNot(periodic);
+				if(++steps == limit) {
+					snapReal = zr;
+					snapImag = zi;
+					steps = 0;
+					limit <<= 1;
+				}
+			}
+		}
+	}
+}
+
+/**
+ * Vector kernel for Julia. z = z ^ 2 + c for a fixed c, starting from the pixel.
+ * @author Blake
+ */
+class JuliaVectorKernel extends VectorKernel {
+
+	private final double cReal;
+	private final double cImag;
+
+	public JuliaVectorKernel(double cReal, double cImag) {
+		this.cReal = cReal;
+		this.cImag = cImag;
+	}
+
+	@Override
+	public void iterateRow(
+			double[] x,
+			double y,
+			int count,
+			int maxIterations,
+			int[] iterations,
+			float[] escapes,
+			int offset) {
+		VectorSpecies<Double> species = MandelbrotVectorKernel.SPECIES;
+		DoubleVector zi = DoubleVector.broadcast(species, y);
+		DoubleVector cr = DoubleVector.broadcast(species, cReal);
+		DoubleVector ci = DoubleVector.broadcast(species, cImag);
+		for(int i=0;i<count;i+=species.length()) {
+			VectorMask<Double> valid = species.indexInRange(i, count);
+			DoubleVector zr = DoubleVector.fromArray(species, x, i, valid);
+			MandelbrotVectorKernel.iterateQuadratic(zr, zi, cr, ci, valid, valid,
+					4, periodicityTolerance, maxIterations, iterations, escapes, offset + i);
+		}
+	}
+
+	@Override
+	public int getLanes() {
+		return MandelbrotVectorKernel.SPECIES.length();
+	}
+}